@@ -0,0 +1,223 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.nextgis.metrocell.core.CellObservation;
+import com.nextgis.metrocell.core.LogPoint;
+import com.nextgis.metrocell.core.ResultReducer;
+import com.nextgis.metrocell.core.Segment;
+import com.nextgis.metrocell.core.SegmentEstimate;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class SQLiteDBHelperTest extends AndroidTestCase {
+    private final static int LAC = 7700;
+    private final static int SEGMENTS = 20, CELLS = 8, ROWS = 10;
+
+    private File mPath;
+    private SQLiteDBHelper mHelper;
+    private SQLiteDatabase mDatabase;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPath = new File(getContext().getCacheDir(), SQLiteDBHelper.DB_NAME);
+        mPath.delete();
+
+        // same layout and empty user_version as the database shipped in assets
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(mPath, null);
+        db.execSQL("create table log_points (seg_begin integer, seg_end integer, x real, y real, ration real, "
+                + "lac integer, cid integer, psc integer, power integer)");
+
+        Random random = new Random(1);
+        db.beginTransaction();
+        for (int s = 0; s < SEGMENTS; s++)
+            for (int c = 0; c < CELLS; c++)
+                for (int r = 0; r < ROWS; r++)
+                    db.execSQL("insert into log_points values (?, ?, ?, ?, ?, ?, ?, ?, ?)", new Object[]{s, s + 1,
+                            random.nextDouble(), random.nextDouble(), random.nextDouble(), LAC, s * 4 + c, -1,
+                            -110 + random.nextInt(60)});
+        db.setTransactionSuccessful();
+        db.endTransaction();
+        db.close();
+
+        mHelper = new SQLiteDBHelper(getContext(), mPath);
+        mDatabase = mHelper.getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mHelper.close();
+        mPath.delete();
+        super.tearDown();
+    }
+
+    public void testMigration() {
+        assertEquals(SQLiteDBHelper.DB_VERSION, mDatabase.getVersion());
+
+        List<String> indices = new ArrayList<>();
+        Cursor data = mDatabase.rawQuery("select name from sqlite_master where type = 'index' and tbl_name = ?",
+                new String[]{SQLiteDBHelper.TABLE_POINTS});
+        while (data.moveToNext())
+            indices.add(data.getString(0));
+        data.close();
+
+        assertTrue(indices.contains(SQLiteDBHelper.INDEX_CELL));
+        assertTrue(indices.contains(SQLiteDBHelper.INDEX_SEGMENT));
+    }
+
+    public void testHistogram() {
+        Cursor data = mDatabase.rawQuery("select count(*), sum(" + SQLiteDBHelper.ROW_COUNT + ") from " + SQLiteDBHelper.TABLE_HISTOGRAM, null);
+        data.moveToFirst();
+        int buckets = data.getInt(0), rows = data.getInt(1);
+        data.close();
+
+        data = mDatabase.rawQuery("select count(*) from " + SQLiteDBHelper.TABLE_POINTS, null);
+        data.moveToFirst();
+        assertEquals(data.getInt(0), rows);
+        data.close();
+
+        data = mDatabase.rawQuery("select count(*) from (select distinct seg_begin, seg_end, lac, cid, power from "
+                + SQLiteDBHelper.TABLE_POINTS + ")", null);
+        data.moveToFirst();
+        assertEquals(data.getInt(0), buckets);
+        data.close();
+    }
+
+    public void testIndexQuery() {
+        assertUsesIndex(SQLiteFingerprintSource.INDEX_QUERY, new String[0]);
+    }
+
+    public void testCellPointsQuery() {
+        assertUsesIndex(SQLiteFingerprintSource.CELL_POINTS_QUERY, new String[]{LAC + "", "4", "-100", "-60"});
+    }
+
+    public void testSegmentsQuery() {
+        for (int cells = 1; cells <= 3; cells++)
+            assertUsesIndex(SQLiteFingerprintSource.getSegmentsQuery(cells), getCellArgs(cells));
+    }
+
+    public void testRatioIntervalQuery() {
+        for (int cells = 1; cells <= 3; cells++)
+            assertUsesIndex(SQLiteFingerprintSource.getRatioIntervalQuery(cells), getSegmentArgs(cells), SQLiteDBHelper.TABLE_HISTOGRAM);
+    }
+
+    public void testPointsQuery() {
+        for (int cells = 1; cells <= 3; cells++) {
+            List<String> args = new ArrayList<>(Arrays.asList(getSegmentArgs(cells)));
+            args.add("0.2");
+            args.add("0.8");
+            assertUsesIndex(SQLiteFingerprintSource.getPointsQuery(cells), args.toArray(new String[args.size()]));
+        }
+    }
+
+    public void testResolveQueries() {
+        List<Segment> segments = new ArrayList<>();
+        for (int s = 0; s < 4; s++)
+            segments.add(new Segment(s, s + 1));
+
+        // fills temp tables, so their lookups are planned as in production
+        new SQLiteFingerprintSource(mDatabase).resolve(segments, getCells(2), 5, new ArrayList<LogPoint>());
+        assertUsesIndex(SQLiteFingerprintSource.RATIO_INTERVALS_QUERY, new String[0], "h");
+        assertUsesIndex(SQLiteFingerprintSource.SEGMENT_POINTS_QUERY, new String[0], "p");
+    }
+
+    public void testResolvedRatio() {
+        List<CellObservation> cells = getCells(1);
+        cells.get(0).setMinPower(-110);
+        cells.get(0).setMaxPower(-50);
+
+        List<LogPoint> rows = new ArrayList<>();
+        assertTrue(new SQLiteFingerprintSource(mDatabase).resolve(Arrays.asList(new Segment(1, 2)), cells, 5, rows));
+        assertFalse(rows.isEmpty());
+
+        for (LogPoint row : rows)
+            assertFalse(Double.isNaN(row.getRatio()));
+
+        SegmentEstimate estimate = ResultReducer.reduce(rows, cells).get(0);
+        assertTrue(estimate.getMinRatio() >= 0 && estimate.getMinRatio() <= estimate.getRatio());
+        assertTrue(estimate.getRatio() <= estimate.getMaxRatio() && estimate.getMaxRatio() <= 1);
+    }
+
+    private String[] getCellArgs(int cells) {
+        String[] args = new String[cells * 2];
+
+        for (int i = 0; i < cells; i++) {
+            args[i * 2] = LAC + "";
+            args[i * 2 + 1] = 4 + i + "";
+        }
+
+        return args;
+    }
+
+    private List<CellObservation> getCells(int cells) {
+        List<CellObservation> observations = new ArrayList<>();
+        for (int i = 0; i < cells; i++) {
+            CellObservation cell = new CellObservation(0, i == 0, 0, -1, -1, LAC, 4 + i, -1, -80);
+            cell.setMinPower(-90);
+            cell.setMaxPower(-70);
+            observations.add(cell);
+        }
+
+        return observations;
+    }
+
+    private String[] getSegmentArgs(int cells) {
+        List<String> args = new ArrayList<>();
+        SQLiteFingerprintSource.addSegmentArgs(new Segment(1, 2), getCells(cells), 5, args);
+        return args.toArray(new String[args.size()]);
+    }
+
+    private void assertUsesIndex(String query, String[] args) {
+        assertUsesIndex(query, args, SQLiteDBHelper.TABLE_POINTS);
+    }
+
+    /**
+     * @param name table name or alias as it appears in the plan
+     */
+    private void assertUsesIndex(String query, String[] args, String name) {
+        boolean indexed = false;
+        Cursor plan = mDatabase.rawQuery("explain query plan " + query, args);
+        int column = plan.getColumnIndex("detail");
+
+        while (plan.moveToNext()) {
+            String detail = plan.getString(column);
+
+            if (!(detail + " ").contains(" " + name + " "))
+                continue;
+
+            assertTrue("full table scan in " + query + ": " + detail, detail.contains("INDEX") && !detail.contains("AUTOMATIC"));
+            indexed = true;
+        }
+
+        plan.close();
+        assertTrue("no index used in " + query, indexed);
+    }
+}
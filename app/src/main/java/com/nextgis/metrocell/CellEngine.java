@@ -36,6 +36,8 @@ import android.telephony.SignalStrength;
 import android.telephony.TelephonyManager;
 import android.telephony.gsm.GsmCellLocation;
 
+import com.nextgis.metrocell.core.CellObservation;
+import com.nextgis.metrocell.core.CellSnapshot;
 import com.nextgis.metrocell.util.Constants;
 
 import java.util.ArrayList;
@@ -184,14 +186,13 @@ public class CellEngine {
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
-    public ArrayList<GSMInfo> getGSMInfoArray() {
+    public void scan(CellSnapshot snapshot) {
         int osVersion = Build.VERSION.SDK_INT;
         int api17 = Build.VERSION_CODES.JELLY_BEAN_MR1;
         int api18 = Build.VERSION_CODES.JELLY_BEAN_MR2;
 
-        ArrayList<GSMInfo> gsmInfoArray = new ArrayList<>();
-
         long timeStamp = System.currentTimeMillis();
+        snapshot.clear(timeStamp);
 //		boolean useAPI17 = PreferenceManager.getDefaultSharedPreferences(mContext).getBoolean(Constants.PREF_USE_API17, false); // WCDMA uses API 18+, now min is 18
         boolean useAPI17 = true;
         boolean isRegistered = false;
@@ -209,8 +210,8 @@ public class CellEngine {
                         CellIdentityGsm gsmIdentity = gsm.getCellIdentity();
 
                         isRegistered |= gsm.isRegistered();
-                        gsmInfoArray.add(new GSMInfo(timeStamp, gsm.isRegistered(), nwType, gsmIdentity.getMcc(), gsmIdentity.getMnc(), gsmIdentity.getLac(),
-                                gsmIdentity.getCid(), Constants.UNDEFINED, gsm.getCellSignalStrength().getDbm()));
+                        add(snapshot, gsm.isRegistered(), nwType, gsmIdentity.getMcc(), gsmIdentity.getMnc(), gsmIdentity.getLac(),
+                                gsmIdentity.getCid(), Constants.UNDEFINED, gsm.getCellSignalStrength().getDbm());
 
                         // 3G - WCDMA cell towers, its API 18+
                     } else if (osVersion >= api18 && cell.getClass() == CellInfoWcdma.class) {
@@ -218,13 +219,13 @@ public class CellEngine {
                         CellIdentityWcdma wcdmaIdentity = wcdma.getCellIdentity();
 
                         isRegistered |= wcdma.isRegistered();
-                        gsmInfoArray.add(new GSMInfo(timeStamp, wcdma.isRegistered(), nwType, wcdmaIdentity.getMcc(), wcdmaIdentity.getMnc(), wcdmaIdentity
-                                .getLac(), wcdmaIdentity.getCid(), wcdmaIdentity.getPsc(), wcdma.getCellSignalStrength().getDbm()));
+                        add(snapshot, wcdma.isRegistered(), nwType, wcdmaIdentity.getMcc(), wcdmaIdentity.getMnc(), wcdmaIdentity
+                                .getLac(), wcdmaIdentity.getCid(), wcdmaIdentity.getPsc(), wcdma.getCellSignalStrength().getDbm());
                     }
                 }
         }
 
-        if (gsmInfoArray.size() == 0) { // in case API 17/18 didn't return anything
+        if (snapshot.size() == 0) { // in case API 17/18 didn't return anything
             // #1 using default way to obtain cell towers info
             int mcc = Constants.UNDEFINED;
             int mnc = Constants.UNDEFINED;
@@ -251,8 +252,8 @@ public class CellEngine {
 
                 if (gsmCellLocation != null) {
                     isRegistered = true;
-                    gsmInfoArray.add(new GSMInfo(timeStamp, true, mTelephonyManager.getNetworkType(), mcc, mnc, gsmCellLocation.getLac(), gsmCellLocation
-                            .getCid(), gsmCellLocation.getPsc(), signalStrength));
+                    add(snapshot, true, mTelephonyManager.getNetworkType(), mcc, mnc, gsmCellLocation.getLac(), gsmCellLocation
+                            .getCid(), gsmCellLocation.getPsc(), signalStrength);
                 }
             }
 
@@ -262,17 +263,21 @@ public class CellEngine {
                 int nbNetworkType = neighbor.getNetworkType();
 
                 //				if (nbNetworkType == TelephonyManager.NETWORK_TYPE_GPRS || nbNetworkType == TelephonyManager.NETWORK_TYPE_EDGE) {
-                gsmInfoArray.add(new GSMInfo(timeStamp, false, nbNetworkType, Constants.UNDEFINED, Constants.UNDEFINED, neighbor.getLac(), neighbor.getCid(), neighbor.getPsc(),
-                        signalStrengthAsuToDbm(neighbor.getRssi(), nbNetworkType)));
+                add(snapshot, false, nbNetworkType, Constants.UNDEFINED, Constants.UNDEFINED, neighbor.getLac(), neighbor.getCid(), neighbor.getPsc(),
+                        signalStrengthAsuToDbm(neighbor.getRssi(), nbNetworkType));
                 //				}
             }
         }
 
-        if (gsmInfoArray.size() == 0 || !isRegistered) { // add default record if there is no items in array /-1
-            gsmInfoArray.add(new GSMInfo(timeStamp));
+        if (snapshot.size() == 0 || !isRegistered) { // add default record if there is no items in array /-1
+            snapshot.add(true, TelephonyManager.NETWORK_TYPE_UNKNOWN, Constants.UNDEFINED, Constants.UNDEFINED, Constants.UNDEFINED,
+                    Constants.UNDEFINED, Constants.UNDEFINED, Constants.UNDEFINED);
         }
+    }
 
-        return gsmInfoArray;
+    private static void add(CellSnapshot snapshot, boolean active, int networkType, int mcc, int mnc, int lac, int cid, int psc, int rssi) {
+        snapshot.add(active, networkType, checkMccMnc(mcc), checkMccMnc(mnc), checkLac(lac), checkCid(networkType, cid),
+                checkPsc(networkType, psc), rssi);
     }
 
     public String getNetworkOperator() {
@@ -353,15 +358,15 @@ public class CellEngine {
         return network;
     }
 
-    public static String getItem(GSMInfo gsmInfo, String active, String ID, String markName, String userName) {
+    public static String getItem(CellObservation gsmInfo, String active, String ID, String markName, String userName) {
         StringBuilder sb = new StringBuilder();
 
         sb.append(ID).append(Constants.CSV_SEPARATOR);
         sb.append(markName).append(Constants.CSV_SEPARATOR);
         sb.append(userName).append(Constants.CSV_SEPARATOR);
         sb.append(gsmInfo.getTimeStamp()).append(Constants.CSV_SEPARATOR);
-        sb.append(gsmInfo.networkGen()).append(Constants.CSV_SEPARATOR);
-        sb.append(gsmInfo.networkType()).append(Constants.CSV_SEPARATOR);
+        sb.append(getNetworkGen(gsmInfo.getNetworkType())).append(Constants.CSV_SEPARATOR);
+        sb.append(getNetworkType(gsmInfo.getNetworkType())).append(Constants.CSV_SEPARATOR);
         sb.append(active).append(Constants.CSV_SEPARATOR);
 
         sb.append(gsmInfo.getMcc()).append(Constants.CSV_SEPARATOR);
@@ -374,133 +379,31 @@ public class CellEngine {
         return sb.toString();
     }
 
-    public class GSMInfo {
-        private long timeStamp;
-        private boolean active;
-        private int mcc;
-        private int mnc;
-        private int lac;
-        private int cid;
-        private int psc;
-        private int networkType;
-        private int rssi;
-        private int minPower, maxPower;
-
-        public GSMInfo(long timeStamp) {
-            this.timeStamp = timeStamp;
-            this.active = true;
-            this.networkType = TelephonyManager.NETWORK_TYPE_UNKNOWN;
-            this.mcc = Constants.UNDEFINED;
-            this.mnc = Constants.UNDEFINED;
-            this.lac = Constants.UNDEFINED;
-            this.cid = Constants.UNDEFINED;
-            this.psc = Constants.UNDEFINED;
-            this.rssi = Constants.UNDEFINED;
-        }
-
-        public GSMInfo(long timeStamp, boolean active, int networkType, int mcc, int mnc, int lac, int cid, int psc, int rssi) {
-            this.timeStamp = timeStamp;
-            this.active = active;
-            this.networkType = networkType;
-            this.lac = lac;
-            this.cid = cid;
-            this.psc = psc;
-            this.rssi = minPower = maxPower = rssi;
-
-            boolean outOfBounds = mcc <= LOW_BOUND || mcc >= MAX_MCC_MNC;
-            this.mcc = outOfBounds ? Constants.UNDEFINED : mcc;
-
-            outOfBounds = mnc <= LOW_BOUND || mnc >= MAX_MCC_MNC;
-            this.mnc = outOfBounds ? Constants.UNDEFINED : mnc;
-
-            switch (networkType) {
-                case TelephonyManager.NETWORK_TYPE_EDGE:
-                case TelephonyManager.NETWORK_TYPE_GPRS:
-                    if (lac <= LOW_BOUND || lac >= MAX_2G_LAC_CID)
-                        this.lac = -1;
-
-                    if (cid <= LOW_BOUND || cid >= MAX_2G_LAC_CID)
-                        this.cid = -1;
-                    break;
-                case TelephonyManager.NETWORK_TYPE_UMTS:
-                case TelephonyManager.NETWORK_TYPE_HSPA:
-                case TelephonyManager.NETWORK_TYPE_HSDPA:
-                case TelephonyManager.NETWORK_TYPE_HSUPA:
-                case TelephonyManager.NETWORK_TYPE_HSPAP:
-                default:
-                    if (lac <= LOW_BOUND || lac >= MAX_2G_LAC_CID) {
-                            this.lac = -1;
-                    }
-
-                    if (cid <= LOW_BOUND || cid >= MAX_3G_CID) {
-                            this.cid = -1;
-                    }
-
-                    if (psc <= LOW_BOUND || psc >= MAX_PSC) {
-                            this.psc = -1;
-                    }
-                    break;
-            }
-        }
-
-        public long getTimeStamp() {
-            return timeStamp;
-        }
-
-        public boolean isActive() {
-            return active;
-        }
-
-        public String networkType() {
-            return getNetworkType(networkType);
-        }
-
-        public String networkGen() {
-            return getNetworkGen(networkType);
-        }
-
-        public int getMcc() {
-            return mcc;
-        }
-
-        public int getMnc() {
-            return mnc;
-        }
-
-        public int getLac() {
-            return lac;
-        }
-
-        public int getCid() {
-            return cid;
-        }
-
-        public int getPsc() {
-            return psc;
-        }
-
-        public int getRssi() {
-            return rssi;
-        }
-
-        public int getMinPower() {
-            return minPower;
-        }
-
-        public int getMaxPower() {
-            return maxPower;
-        }
+    private static int checkMccMnc(int value) {
+        return value <= LOW_BOUND || value >= MAX_MCC_MNC ? Constants.UNDEFINED : value;
+    }
 
-        public void setMinPower(int minPower) {
-            this.minPower = minPower;
-        }
+    private static int checkLac(int lac) {
+        return lac <= LOW_BOUND || lac >= MAX_2G_LAC_CID ? -1 : lac;
+    }
 
-        public void setMaxPower(int maxPower) {
-            this.maxPower = maxPower;
+    private static int checkCid(int networkType, int cid) {
+        switch (networkType) {
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+                return cid <= LOW_BOUND || cid >= MAX_2G_LAC_CID ? -1 : cid;
+            default:
+                return cid <= LOW_BOUND || cid >= MAX_3G_CID ? -1 : cid;
         }
+    }
 
-        public boolean equals(GSMInfo item) {
-            return item.getCid() == cid && item.getLac() == lac;
+    private static int checkPsc(int networkType, int psc) {
+        switch (networkType) {
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+                return psc;
+            default:
+                return psc <= LOW_BOUND || psc >= MAX_PSC ? -1 : psc;
         }
     }
 }
@@ -36,7 +36,9 @@ import com.nextgis.maplib.util.GeoConstants;
 import com.nextgis.maplibui.api.Overlay;
 import com.nextgis.maplibui.api.OverlayItem;
 import com.nextgis.maplibui.mapui.MapViewOverlays;
+import com.nextgis.metrocell.core.PipelineMetrics;
 
+import java.util.Arrays;
 import java.util.List;
 
 public class CurrentCellLocationOverlay extends Overlay {
@@ -44,12 +46,25 @@ public class CurrentCellLocationOverlay extends Overlay {
     double mLat, mLong;
     boolean mIsVisible = false;
     List<GeoPoint> mPoints;
-    Paint mPaint, mPaintFill;
+    Paint mPaint, mPaintFill, mPaintCluster;
     int mWidth = 1;
     int mRadius = 6;
 
+    private final static double UNIT = 1000;
+    private final GeoPoint mOrigin = new GeoPoint(0, 0), mUnit = new GeoPoint(UNIT, 0);
+    // map points, their screen transform and canvas size of the last clustering
+    private double[] mMapPoints;
+    private double mOriginX, mOriginY, mScale;
+    private int mWidthPx, mHeightPx;
+    // screen points as x, y pairs, separate ones and centers of merged ones
+    private long[] mKeys = new long[0];
+    private float[] mSingles = new float[0], mClusters = new float[0], mMoved = new float[0];
+    private int mSingleCount, mClusterCount;
+    private final PipelineMetrics mMetrics;
+
     public CurrentCellLocationOverlay(Context context, MapViewOverlays mapViewOverlays, GeoPoint initialPosition) {
         super(context, mapViewOverlays);
+        mMetrics = ((GISApplication) context.getApplicationContext()).getMetrics();
 
         Bitmap marker = BitmapFactory.decodeResource(context.getResources(), R.drawable.ic_location).copy(Bitmap.Config.ARGB_8888, true);
 
@@ -65,6 +80,12 @@ public class CurrentCellLocationOverlay extends Overlay {
 //        canvas.drawBitmap(marker, 0, 0, mPaint);
         mPaint.setStyle(Paint.Style.STROKE);
         mPaint.setStrokeWidth((float) (mWidth));
+
+        // round points of glyph diameter, so a batch of circles is one drawPoints call
+        mPaintFill.setStrokeWidth(mRadius * 2);
+        mPaintFill.setStrokeCap(Paint.Cap.ROUND);
+        mPaintCluster = new Paint(mPaintFill);
+        mPaintCluster.setStrokeWidth(mRadius * 3);
 //        mPaint.setStrokeCap(Paint.Cap.ROUND);
 
         mLat = initialPosition.getY();
@@ -73,8 +94,20 @@ public class CurrentCellLocationOverlay extends Overlay {
     }
 
     public void setNewCellLine(GeoLineString line) {
-        mPoints = line.getPoints();
         line.project(GeoConstants.CRS_WEB_MERCATOR);
+        mPoints = line.getPoints();
+
+        double[] mapPoints = new double[mPoints.size() * 2];
+        for (int i = 0; i < mPoints.size(); i++) {
+            mapPoints[i * 2] = mPoints.get(i).getX();
+            mapPoints[i * 2 + 1] = mPoints.get(i).getY();
+        }
+
+        synchronized (this) {
+            mMapPoints = mapPoints;
+            mScale = 0;
+        }
+
         mMapViewOverlays.postInvalidate();
     }
 
@@ -89,35 +122,116 @@ public class CurrentCellLocationOverlay extends Overlay {
     }
 
     @Override
-    public void draw(Canvas canvas, MapDrawable mapDrawable) {
-        if (mIsVisible) {
-            GeoPoint x0;
-
-            for (int i = 0; i < mPoints.size(); i++) {
-                x0 = mapDrawable.mapToScreen(mPoints.get(i));
-                canvas.drawCircle((float) x0.getX(), (float) x0.getY(), mRadius, mPaintFill);
-//            for (int i = 1; i < mPoints.size(); i++) {
-//                x1 = mapDrawable.mapToScreen(mPoints.get(i - 1));
-//                canvas.drawLine((float) x0.getX(), (float) x0.getY(), (float) x1.getX(), (float) x1.getY(), mPaint);
-//                x0 = x1;
+    public synchronized void draw(Canvas canvas, MapDrawable mapDrawable) {
+        if (mIsVisible && mMapPoints != null) {
+            long start = PipelineMetrics.start();
+            GeoPoint origin = mapDrawable.mapToScreen(mOrigin), unit = mapDrawable.mapToScreen(mUnit);
+            double scale = (unit.getX() - origin.getX()) / UNIT;
+
+            // points are projected and clustered again only when map moves
+            if (origin.getX() != mOriginX || origin.getY() != mOriginY || scale != mScale || canvas.getWidth() != mWidthPx
+                    || canvas.getHeight() != mHeightPx) {
+                mOriginX = origin.getX();
+                mOriginY = origin.getY();
+                mScale = scale;
+                mWidthPx = canvas.getWidth();
+                mHeightPx = canvas.getHeight();
+                cluster();
             }
 
-//            mMarker.setCoordinates(mLong, mLat);
-//            drawOverlayItem(canvas, mMarker);
+            drawPoints(canvas, 0, 0, 0, 0, 1);
+            mMetrics.stop(PipelineMetrics.STAGE_RENDER, start);
         }
     }
 
     @Override
-    public void drawOnPanning(Canvas canvas, PointF currentMouseOffset) {
+    public synchronized void drawOnPanning(Canvas canvas, PointF currentMouseOffset) {
         if (mIsVisible) {
+            drawPoints(canvas, 0, 0, -currentMouseOffset.x, -currentMouseOffset.y, 1);
             drawOnPanning(canvas, currentMouseOffset, mMarker);
         }
     }
 
     @Override
-    public void drawOnZooming(Canvas canvas, PointF currentFocusLocation, float scale) {
+    public synchronized void drawOnZooming(Canvas canvas, PointF currentFocusLocation, float scale) {
         if (mIsVisible) {
+            drawPoints(canvas, currentFocusLocation.x, currentFocusLocation.y, 0, 0, scale);
             drawOnZooming(canvas, currentFocusLocation, scale, mMarker, false);
         }
     }
+
+    /**
+     * Projects map points to screen and merges ones sharing a grid cell of glyph size into their center.
+     */
+    private void cluster() {
+        int count = mMapPoints.length / 2, cell = mRadius * 2, kept = 0;
+        int columns = mWidthPx / cell + 3, rows = mHeightPx / cell + 3;
+
+        if (mKeys.length < count)
+            mKeys = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            double x = mOriginX + mMapPoints[i * 2] * mScale, y = mOriginY - mMapPoints[i * 2 + 1] * mScale;
+            int column = (int) Math.floor(x / cell) + 1, row = (int) Math.floor(y / cell) + 1;
+
+            // offscreen points are not drawn, a border cell keeps glyphs cut by the edge
+            if (column >= 0 && column < columns && row >= 0 && row < rows)
+                mKeys[kept++] = ((long) column * rows + row) << 32 | i;
+        }
+
+        Arrays.sort(mKeys, 0, kept);
+
+        if (mSingles.length < kept * 2) {
+            mSingles = new float[kept * 2];
+            mClusters = new float[kept * 2];
+        }
+
+        mSingleCount = mClusterCount = 0;
+        for (int from = 0, to; from < kept; from = to) {
+            double x = 0, y = 0;
+
+            for (to = from; to < kept && mKeys[to] >>> 32 == mKeys[from] >>> 32; to++) {
+                int i = (int) mKeys[to];
+                x += mOriginX + mMapPoints[i * 2] * mScale;
+                y += mOriginY - mMapPoints[i * 2 + 1] * mScale;
+            }
+
+            if (to - from == 1) {
+                mSingles[mSingleCount++] = (float) x;
+                mSingles[mSingleCount++] = (float) y;
+            } else {
+                mClusters[mClusterCount++] = (float) (x / (to - from));
+                mClusters[mClusterCount++] = (float) (y / (to - from));
+            }
+        }
+    }
+
+    /**
+     * Draws glyphs moved by a gesture: scaled around focus, then offset. Each kind is a single call.
+     */
+    private void drawPoints(Canvas canvas, float focusX, float focusY, float offsetX, float offsetY, float scale) {
+        drawPoints(canvas, mSingles, mSingleCount, focusX, focusY, offsetX, offsetY, scale, mPaintFill);
+        drawPoints(canvas, mClusters, mClusterCount, focusX, focusY, offsetX, offsetY, scale, mPaintCluster);
+    }
+
+    private void drawPoints(Canvas canvas, float[] points, int count, float focusX, float focusY, float offsetX, float offsetY,
+                            float scale, Paint paint) {
+        if (count == 0)
+            return;
+
+        if (scale == 1 && offsetX == 0 && offsetY == 0) {
+            canvas.drawPoints(points, 0, count, paint);
+            return;
+        }
+
+        if (mMoved.length < count)
+            mMoved = new float[points.length];
+
+        for (int i = 0; i < count; i += 2) {
+            mMoved[i] = focusX + (points[i] - focusX) * scale + offsetX;
+            mMoved[i + 1] = focusY + (points[i + 1] - focusY) * scale + offsetY;
+        }
+
+        canvas.drawPoints(mMoved, 0, count, paint);
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.util.Log;
+
+import com.nextgis.metrocell.core.FingerprintIndex;
+import com.nextgis.metrocell.core.FingerprintSource;
+import com.nextgis.metrocell.core.IndexedFingerprintSource;
+import com.nextgis.metrocell.core.MetroTopology;
+import com.nextgis.metrocell.core.PipelineMetrics;
+import com.nextgis.metrocell.core.Segment;
+import com.nextgis.metrocell.core.SegmentRanker;
+import com.nextgis.metrocell.util.Constants;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only log_points connection shared by all searches of the process. Keeps compiled
+ * statements and query cache of the connection alive between fixes.
+ */
+public class FingerprintSession {
+    private SQLiteDatabase mDatabase;
+    private SQLiteFingerprintSource mDatabaseSource;
+    private FingerprintSource mSource;
+    private SegmentRanker mRanker;
+    private MetroTopology mTopology;
+
+    public FingerprintSession(File dbPath, PipelineMetrics metrics) {
+        mDatabase = SQLiteDatabase.openDatabase(dbPath.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+
+        // variable-shape queries are cached per cells count, default cache is too small to hold them all
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+            mDatabase.setMaxSqlCacheSize(SQLiteDatabase.MAX_SQL_CACHE_SIZE);
+
+        mDatabaseSource = new SQLiteFingerprintSource(mDatabase);
+        mDatabaseSource.setMetrics(metrics);
+    }
+
+    /**
+     * Loads fingerprint index and ranker, compiles fixed-shape lookups, so call it off the main thread.
+     */
+    public synchronized void warmUp() {
+        if (mSource != null)
+            return;
+
+        long start = System.currentTimeMillis();
+        FingerprintIndex index = SQLiteFingerprintSource.loadIndex(mDatabase);
+        mDatabaseSource.prepare();
+        mRanker = SQLiteFingerprintSource.loadRanker(mDatabase);
+
+        List<Segment> segments = new ArrayList<>(index.getSegmentCount());
+        for (int i = 0; i < index.getSegmentCount(); i++)
+            segments.add(index.getSegment(i));
+
+        mTopology = MetroTopology.fromSegments(segments);
+        mSource = new IndexedFingerprintSource(index, mDatabaseSource);
+
+        Log.d(Constants.TAG, "fingerprint session warmed up in " + (System.currentTimeMillis() - start) + " ms: "
+                + index.getCellCount() + " cells, " + index.getSegmentCount() + " segments, " + mRanker.getStateCount() + " states, "
+                + mTopology.getStationCount() + " stations");
+    }
+
+    /**
+     * Warms session up if background warm up has not finished yet.
+     */
+    public synchronized FingerprintSource getSource() {
+        warmUp();
+        return mSource;
+    }
+
+    public synchronized SegmentRanker getRanker() {
+        warmUp();
+        return mRanker;
+    }
+
+    public synchronized MetroTopology getTopology() {
+        warmUp();
+        return mTopology;
+    }
+
+    public SQLiteDatabase getDatabase() {
+        return mDatabase;
+    }
+}
@@ -28,8 +28,10 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.net.Uri;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
+import android.util.Log;
 import android.widget.Toast;
 
 import com.nextgis.maplib.api.IGISApplication;
@@ -39,18 +41,16 @@ import com.nextgis.maplib.map.MapDrawable;
 import com.nextgis.maplib.map.RemoteTMSLayer;
 import com.nextgis.maplib.util.FileUtil;
 import com.nextgis.maplib.util.GeoConstants;
+import com.nextgis.metrocell.core.MappedFingerprintStore;
+import com.nextgis.metrocell.core.PipelineMetrics;
+import com.nextgis.metrocell.core.ResultWriter;
 import com.nextgis.metrocell.maplib.MetroLayerFactory;
 import com.nextgis.metrocell.maplib.MetroVectorLayer;
 import com.nextgis.metrocell.util.Constants;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 
 public class GISApplication extends Application implements IGISApplication {
     private static final String AUTHORITY = "com.nextgis.metrocell";
@@ -61,16 +61,33 @@ public class GISApplication extends Application implements IGISApplication {
     private MapDrawable mMap;
     private GpsEventSource mGpsEventSource;
     private SharedPreferences mSharedPreferences;
+    private FingerprintSession mFingerprintSession;
+    private MappedFingerprintStore mFingerprintStore;
+    private boolean mIsDatabaseChecked;
+    private ResultWriter mResultWriter;
+    private final PipelineMetrics mMetrics = new PipelineMetrics();
+
+    // preferences keep listeners weakly, so it is held here
+    private SharedPreferences.OnSharedPreferenceChangeListener mTracingListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+            if (Constants.PREF_APP_TRACE_QUERIES.equals(key))
+                mMetrics.setTracing(preferences.getBoolean(key, false));
+        }
+    };
 
     @Override
     public void onCreate() {
         super.onCreate();
 
         mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        mMetrics.setTracing(mSharedPreferences.getBoolean(Constants.PREF_APP_TRACE_QUERIES, false));
+        mSharedPreferences.registerOnSharedPreferenceChangeListener(mTracingListener);
         updateApplicationStructure();
 
         mGpsEventSource = new GpsEventSource(this);
         getMap();
+        warmUpFingerprintSession();
     }
 
     public void onFirstRun() {
@@ -89,37 +106,45 @@ public class GISApplication extends Application implements IGISApplication {
     }
 
     private void createMetroLinesLayer() {
-        try {
-            InputStream inputStream = getAssets().open("lines.geojson");
-
-            if (inputStream.available() > 0) {
-                //read all geojson
-                BufferedReader streamReader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
-                StringBuilder responseStrBuilder = new StringBuilder();
-                String inputStr;
+        MetroVectorLayer layer = new MetroVectorLayer(mMap.getContext(), mMap.createLayerStorage());
+        layer.setName(LAYER_LINES_NAME);
+        layer.setVisible(true);
 
-                while ((inputStr = streamReader.readLine()) != null) {
-                    responseStrBuilder.append(inputStr);
+        String errorMessage = layer.createFromLinesStore(new MetroVectorLayer.StreamSource() {
+            @Override
+            public InputStream open() throws IOException {
+                return getAssets().open("lines.bin");
+            }
+        });
+
+        // prebaked lines are missing when the build step was skipped
+        if (!TextUtils.isEmpty(errorMessage)) {
+            Log.d(Constants.TAG, "prebaked metro lines are not loaded: " + errorMessage);
+            errorMessage = layer.createFromGeoJSON(new MetroVectorLayer.StreamSource() {
+                @Override
+                public InputStream open() throws IOException {
+                    return getAssets().open("lines.geojson");
                 }
+            });
+        }
 
-                MetroVectorLayer layer = new MetroVectorLayer(mMap.getContext(), mMap.createLayerStorage());
-                layer.setName(LAYER_LINES_NAME);
-                layer.setVisible(true);
-
-                JSONObject geoJSONObject = new JSONObject(responseStrBuilder.toString());
-                String errorMessage = layer.createFromGeoJSON(geoJSONObject);
-                layer.reloadCache();
-
-                if (TextUtils.isEmpty(errorMessage)) {
-                    mMap.addLayer(layer);
-                    mMap.save();
-                }
-            }
-        } catch (JSONException | IOException | SecurityException e) {
-            e.printStackTrace();
+        if (TextUtils.isEmpty(errorMessage)) {
+            layer.reloadCache();
+            mMap.addLayer(layer);
+            mMap.save();
+        } else {
+            Log.d(Constants.TAG, "metro lines are not imported: " + errorMessage);
         }
     }
 
+    /**
+     * @return null if metro lines layer is not created yet
+     */
+    public MetroVectorLayer getMetroLinesLayer() {
+        ILayer layer = getMap() == null ? null : getMap().getLayerByName(LAYER_LINES_NAME);
+        return layer instanceof MetroVectorLayer ? (MetroVectorLayer) layer : null;
+    }
+
     @Override
     public MapDrawable getMap() {
         if (null != mMap)
@@ -179,6 +204,120 @@ public class GISApplication extends Application implements IGISApplication {
             return null;
     }
 
+    /**
+     * Migrates log_points database to current schema once per process, so call it off the main thread.
+     *
+     * @return false if there is no database yet
+     */
+    public synchronized boolean checkDatabase() {
+        if (mIsDatabaseChecked)
+            return true;
+
+        File dbPath = getDBPath();
+        if (dbPath == null || !dbPath.isFile())
+            return false;
+
+        SQLiteDBHelper helper = new SQLiteDBHelper(this, dbPath);
+        helper.getWritableDatabase();
+        helper.close();
+        mIsDatabaseChecked = true;
+
+        return true;
+    }
+
+    /**
+     * Opens read-only fingerprint session at first call.
+     *
+     * @return null if there is no database yet
+     */
+    public synchronized FingerprintSession getFingerprintSession() {
+        if (mFingerprintSession == null && checkDatabase())
+            mFingerprintSession = new FingerprintSession(getDBPath(), mMetrics);
+
+        return mFingerprintSession;
+    }
+
+    /**
+     * Opens and warms fingerprint session up in background, no-op until database is copied from assets.
+     */
+    public void warmUpFingerprintSession() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                FingerprintSession session = getFingerprintSession();
+
+                if (session != null)
+                    session.warmUp();
+            }
+        }, "fingerprint-warm-up");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Converts log_points to binary store if it is missing or outdated and maps it,
+     * so call it off the main thread.
+     *
+     * @return null if there is no database yet
+     */
+    public synchronized MappedFingerprintStore getFingerprintStore() {
+        if (mFingerprintStore != null)
+            return mFingerprintStore;
+
+        File dbPath = getDBPath(), storePath = getStorePath();
+        FingerprintSession session = getFingerprintSession();
+        if (storePath == null || session == null)
+            return null;
+
+        try {
+            if (!storePath.isFile() || storePath.lastModified() < dbPath.lastModified())
+                SQLiteFingerprintSource.writeStore(session.getDatabase(), storePath);
+
+            try {
+                mFingerprintStore = new MappedFingerprintStore(storePath);
+            } catch (IOException e) {
+                // store of an older format
+                SQLiteFingerprintSource.writeStore(session.getDatabase(), storePath);
+                mFingerprintStore = new MappedFingerprintStore(storePath);
+            }
+
+            Log.d(Constants.TAG, "fingerprint store mapped: " + mFingerprintStore.getCount() + " rows");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return mFingerprintStore;
+    }
+
+    public synchronized ResultWriter getResultWriter() {
+        if (mResultWriter == null) {
+            mResultWriter = new ResultWriter(Constants.RESULT_HEADER, Constants.CSV_SEPARATOR, new ResultWriter.OnWrittenListener() {
+                @Override
+                public void onWritten(File file) {
+                    Intent intent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE, Uri.fromFile(file));
+                    sendBroadcast(intent);    // update media for MTP
+                }
+            });
+            mResultWriter.setMetrics(mMetrics);
+        }
+
+        return mResultWriter;
+    }
+
+    /**
+     * Stage latencies and counters of searches, see {@link MetricsActivity}.
+     */
+    public PipelineMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public File getStorePath() {
+        if (getExternalFilesDir(null) != null)
+            return new File(getExternalFilesDir(null), SQLiteDBHelper.STORE_NAME);
+        else
+            return null;
+    }
+
     @Override
     public void showSettings() {
         Intent preferences = new Intent(this, PreferencesActivity.class);
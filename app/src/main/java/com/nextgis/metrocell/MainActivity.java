@@ -26,8 +26,6 @@ import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.graphics.PorterDuff;
 import android.net.Uri;
 import android.os.AsyncTask;
@@ -53,6 +51,26 @@ import com.nextgis.maplib.datasource.GeoPoint;
 import com.nextgis.maplib.util.GeoConstants;
 import com.nextgis.maplibui.mapui.MapViewOverlays;
 import com.nextgis.maplibui.util.SettingsConstantsUI;
+import com.nextgis.metrocell.core.Accumulator;
+import com.nextgis.metrocell.core.CellAggregator;
+import com.nextgis.metrocell.core.CellKey;
+import com.nextgis.metrocell.core.CellObservation;
+import com.nextgis.metrocell.core.CellSnapshot;
+import com.nextgis.metrocell.core.FingerprintSource;
+import com.nextgis.metrocell.core.Locator;
+import com.nextgis.metrocell.core.LocatorCache;
+import com.nextgis.metrocell.core.LocatorResult;
+import com.nextgis.metrocell.core.LogPoint;
+import com.nextgis.metrocell.core.MappedFingerprintStore;
+import com.nextgis.metrocell.core.ObservationWindow;
+import com.nextgis.metrocell.core.PipelineMetrics;
+import com.nextgis.metrocell.core.PositioningScheduler;
+import com.nextgis.metrocell.core.ResultReducer;
+import com.nextgis.metrocell.core.Segment;
+import com.nextgis.metrocell.core.SegmentEstimate;
+import com.nextgis.metrocell.core.SegmentRanker;
+import com.nextgis.metrocell.core.TrajectoryTracker;
+import com.nextgis.metrocell.maplib.MetroVectorLayer;
 import com.nextgis.metrocell.util.Constants;
 import com.nextgis.metrocell.util.ConstantsSecured;
 import com.nineoldandroids.view.ViewHelper;
@@ -62,8 +80,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.List;
 
 
 public class MainActivity extends AppCompatActivity implements View.OnClickListener {
@@ -73,6 +90,16 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     CurrentCellLocationOverlay mCurrentCellLocationOverlay;
 
     private CellEngine mCellEngine;
+    private ObservationWindow mObservations;
+    private CellSnapshot mScan;
+    // used under the search lock only
+    private CellSnapshot mSearchScan = new CellSnapshot();
+    private final CellAggregator mSearchAggregator = new CellAggregator();
+    private PositioningScheduler mTracking;
+    private Segment mLastSegment;
+    private long mLastSegmentTime;
+    private LocatorCache mFixCache = new LocatorCache(Constants.FIX_CACHE_SIZE, Constants.FIX_CACHE_TIME * 1000);
+    private FingerprintSource mFixCacheSource;
     TelephonyManager mTelephonyManager;
 //    CellListener mCellListener;
 
@@ -97,6 +124,24 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         ViewHelper.setAlpha(mImageViewStatus, 0.8f);
 
         mCellEngine = new CellEngine(this);
+        mObservations = new ObservationWindow(Constants.ACCUMULATION_TIME * 1000);
+        mScan = new CellSnapshot();
+        mCellEngine.addCellListener(new CellEngine.CellInfoListener() {
+            @Override
+            public void onCellInfoChanged() {
+                mCellEngine.scan(mScan);
+                mScan = mObservations.publish(mScan);
+                mTracking.request();
+            }
+        });
+
+        final TrackingTask trackingTask = new TrackingTask();
+        mTracking = new PositioningScheduler(trackingTask, new Runnable() {
+            @Override
+            public void run() {
+                trackingTask.release();
+            }
+        }, Constants.TRACKING_DELAY);
         mTelephonyManager = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
 //        mCellListener = new CellListener();
 
@@ -140,6 +185,13 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
         initializeMap();
 
+        // lines are composited from raster tiles, the software map layer redraws them too slowly
+        MetroVectorLayer metroLines = ((GISApplication) getApplication()).getMetroLinesLayer();
+        if (metroLines != null) {
+            metroLines.setRasterCached(true);
+            mMapView.addOverlay(new MetroLinesOverlay(this, mMapView, metroLines));
+        }
+
         mCurrentCellLocationOverlay = new CurrentCellLocationOverlay(this, mMapView, new GeoPoint(0, 0));
         mMapView.addOverlay(mCurrentCellLocationOverlay);
 
@@ -199,6 +251,12 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         super.onPause();
     }
 
+    @Override
+    protected void onDestroy() {
+        mTracking.stop();
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -228,6 +286,9 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             case R.id.action_report:
                 sendReport();
                 return true;
+            case R.id.action_tracking:
+                item.setChecked(setTracking(!item.isChecked()));
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -249,6 +310,11 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         if (!mIsInterfaceLoaded || !checkOrCreateDatabase())
             return;
 
+        if (mTracking.isStarted()) {
+            mTracking.request();
+            return;
+        }
+
         FindLocationInDB finder = new FindLocationInDB();
         finder.execute();
     }
@@ -285,274 +351,293 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 //        reporter.execute(data);
     }
 
-    private class FindLocationInDB extends AsyncTask<Void, Void, Boolean> {
-        private GeoPoint mCurrentPoint;
-        private GeoLineString mGeoPosition;
+    /**
+     * Accumulates scans of observation window and locates them, call it off the main thread.
+     * One-off and tracking searches may overlap, so they are serialized to keep last fix
+     * segment and fix cache consistent.
+     *
+     * @param tracker smooths fixes of consecutive searches, null for one-off search
+     */
+    private synchronized Fix search(FingerprintSource source, TrajectoryTracker tracker) {
+        Log.d(Constants.TAG, "==========new search==========");
+        boolean useInvalid = mSharedPreferences.getBoolean(Constants.PREF_APP_USE_INVALID_LAC_CID, true);
+        Fix fix = new Fix();
+
+        if (source == null) {
+            Log.d(Constants.TAG, "return false: no fingerprint database");
+            return fix;
+        }
 
-        @Override
-        protected Boolean doInBackground(Void... params) {
-            Log.d(Constants.TAG, "==========new search==========");
-            boolean invalid = false, result = false;
-            boolean useInvalid = mSharedPreferences.getBoolean(Constants.PREF_APP_USE_INVALID_LAC_CID, true);
-            mCurrentCellLocationOverlay.setVisibility(false);
-            mGeoPosition = new GeoLineString();
-            mGeoPosition.setCRS(GeoConstants.CRS_WGS84);
+        PipelineMetrics metrics = ((GISApplication) getApplication()).getMetrics();
+        long searchStart = PipelineMetrics.start();
+        metrics.count(PipelineMetrics.COUNT_SEARCHES);
 
-            ArrayList<CellEngine.GSMInfo> gsmInfoArray;
-            ArrayList<ArrayList<CellEngine.GSMInfo>> gsmInfoArrayAcc = new ArrayList<>();
-            CellEngine.GSMInfo activeCell = null;
+        CellSnapshot scan = mSearchScan;
+        mCellEngine.scan(scan);
+        long timeStamp = scan.getTimeStamp();
+        long start = metrics.stop(PipelineMetrics.STAGE_SCAN, searchStart);
 
-            Log.d(Constants.TAG, "start accumulation for " + Constants.ACCUMULATION_TIME + " sec");
-            for (int i = 0; i < Constants.ACCUMULATION_TIME; i++) {
-                gsmInfoArrayAcc.add(mCellEngine.getGSMInfoArray());
+        mSearchAggregator.clear();
+        int scans = mObservations.aggregate(timeStamp, mSearchAggregator);
+        Log.d(Constants.TAG, "accumulated " + scans + " scans for " + Constants.ACCUMULATION_TIME + " sec");
+        List<CellObservation> gsmInfoArray = Accumulator.accumulate(mSearchAggregator, scan);
 
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
+        if (gsmInfoArray.isEmpty()) {
+            Log.d(Constants.TAG, "no mutual bts during accumulation");
 
-            gsmInfoArray = new ArrayList<>();
-            for (int i = 0; i < gsmInfoArrayAcc.get(gsmInfoArrayAcc.size() - 1).size(); i++) {
-                boolean persist = false;
-                int min = 1000, max = -1000;
-
-                for (int j = 0; j < gsmInfoArrayAcc.size() - 2; j++) {
-                    for (CellEngine.GSMInfo item : gsmInfoArrayAcc.get(j)) {
-                        if (gsmInfoArrayAcc.get(gsmInfoArrayAcc.size() - 1).get(i).equals(item)) {
-                            persist = true;
+            for (int i = 0; i < scan.size(); i++)
+                gsmInfoArray.add(scan.get(i));
+        }
 
-                            if (max < item.getRssi())
-                                max = item.getRssi();
+        mSearchScan = mObservations.publish(scan);
+        metrics.stop(PipelineMetrics.STAGE_ACCUMULATE, start);
 
-                            if (min > item.getRssi())
-                                min = item.getRssi();
-                        }
-                    }
-                }
+        Locator locator = new Locator(source, Constants.POWER_DELTA);
+        locator.setMetrics(metrics);
+        FingerprintSession session = ((GISApplication) getApplication()).getFingerprintSession();
+        long neighborhood = -1;
+        if (session != null) {
+            locator.setRanker(session.getRanker(), Constants.RANKED_STATES);
 
-                if (persist) {
-                    gsmInfoArrayAcc.get(gsmInfoArrayAcc.size() - 1).get(i).setMaxPower(max);
-                    gsmInfoArrayAcc.get(gsmInfoArrayAcc.size() - 1).get(i).setMinPower(min);
-                    gsmInfoArray.add(gsmInfoArrayAcc.get(gsmInfoArrayAcc.size() - 1).get(i));
-                }
+            // underground we can't get far from the last fix, so far segments are only cell noise
+            if (mLastSegment != null && timeStamp - mLastSegmentTime < Constants.NEIGHBORHOOD_TIME * 1000) {
+                locator.setNeighborhood(session.getTopology(), mLastSegment, Constants.NEIGHBORHOOD_HOPS);
+                neighborhood = CellKey.pack(mLastSegment.getBeginSeg(), mLastSegment.getEndSeg());
             }
+        }
 
-            if (gsmInfoArray.isEmpty()) {
-                gsmInfoArray = mCellEngine.getGSMInfoArray();
-                Log.d(Constants.TAG, "no mutual bts during accumulation");
-            }
+        if (source != mFixCacheSource) {
+            mFixCache.clear();
+            mFixCacheSource = source;
+        }
 
-            SQLiteDatabase db = SQLiteDatabase.openDatabase(((GISApplication) getApplication()).getDBPath().getPath(), null, 0);
-            ArrayList<String> args = new ArrayList<>();
-            String selection, where, payload = String.format("select distinct %s, %s from %s where %s = ? and %s = ?",
-                    SQLiteDBHelper.ROW_SEG_BEGIN, SQLiteDBHelper.ROW_SEG_END, SQLiteDBHelper.TABLE_POINTS, SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID);
+        LocatorCache.Key key = mFixCache.getKey(gsmInfoArray, useInvalid, neighborhood);
+        LocatorResult result = mFixCache.get(key, timeStamp);
+        if (result == null) {
+            result = locator.locate(gsmInfoArray, useInvalid);
+            mFixCache.put(key, result, timeStamp);
+        } else {
+            metrics.count(PipelineMetrics.COUNT_CACHE_HITS);
+        }
 
-            selection = payload;
-            where = "\r\n";
+        if (metrics.isTracing())
+            Log.d(Constants.TAG, "fix cache hits: " + mFixCache.getHitCount() + " misses: " + mFixCache.getMissCount());
+        int state = tracker == null ? -1 : tracker.update(gsmInfoArray, timeStamp);
 
-            for (CellEngine.GSMInfo gsmInfo : gsmInfoArray) {
-                if (invalid || (gsmInfo.getCid() == -1 && gsmInfo.getLac() == -1 && !useInvalid))
-                    continue;
+        String where = "\r\n";
+        CellObservation first = gsmInfoArray.get(0);
+        for (CellObservation gsmInfo : result.getCells()) {
+            String active = gsmInfo.isActive() ? "1" : first.getMcc() + "-" + first.getMnc() + "-" + first.getLac() + "-" + first.getCid();
+            where += "\r\n" + CellEngine.getItem(gsmInfo, active, "", "", "");
+        }
 
-                if (args.size() > 0)
-                    selection += " intersect " + payload;
+        mSharedPreferences.edit().putString(Constants.PREF_APP_SAVED_MAILS, where).commit();
 
-                args.add(gsmInfo.getLac() + "");
-                args.add(gsmInfo.getCid() + "");
+        switch (result.getStatus()) {
+            case NO_ACTIVE_CELL:
+                Log.d(Constants.TAG, "return false: no active bts or lac/cid = -1");
+                metrics.stop(PipelineMetrics.STAGE_SEARCH, searchStart);
+                return state < 0 ? fix : getTrackedFix(tracker);
+            case NO_POWER_MATCH:
+                Log.d(Constants.TAG, "not found rows with given power");
+                metrics.stop(PipelineMetrics.STAGE_SEARCH, searchStart);
+                return state < 0 ? fix : getTrackedFix(tracker);
+            case FOUND_RANKED:
+                Log.d(Constants.TAG, "found " + result.getPoints().size() + " ranked states");
+                break;
+            case FOUND_ACTIVE_CELL:
+                CellObservation activeCell = result.getActiveCell();
+                Log.d(Constants.TAG, "found active bts only lac: " + activeCell.getLac() + " cid: " + activeCell.getCid());
+                break;
+        }
 
-                String active = gsmInfo.isActive() ? "1" : gsmInfoArray.get(0).getMcc() + "-" + gsmInfoArray.get(0).getMnc() + "-"
-                        + gsmInfoArray.get(0).getLac() + "-" + gsmInfoArray.get(0).getCid();
-                where += "\r\n" + CellEngine.getItem(gsmInfo, active, "", "", "");
+        if (result.getSegments().isEmpty()) {
+            Log.d(Constants.TAG, "no bts intersections");
+        } else {
+            Log.d(Constants.TAG, "found bts intersections");
 
-                if (gsmInfo.isActive()) {
-                    activeCell = gsmInfo;
-                }
+            if (result.getStatus() == LocatorResult.Status.FOUND_SEGMENTS && mSharedPreferences.getBoolean(Constants.PREF_APP_SAVE_RESULT, false))
+                saveResult(result.getPoints());
+        }
 
-                if (gsmInfo.getCid() == -1 && gsmInfo.getLac() == -1)
-                    invalid = true;
-            }
+        // ranked states are one point each already, rows are reduced to a position per segment
+        if (result.getStatus() == LocatorResult.Status.FOUND_RANKED) {
+            for (LogPoint point : result.getPoints())
+                fix.mGeoPosition.add(new GeoPoint(point.getX(), point.getY()));
 
-            mSharedPreferences.edit().putString(Constants.PREF_APP_SAVED_MAILS, where).commit();
+            LogPoint best = result.getPoints().get(0);
+            fix.mCurrentPoint = fix.mGeoPosition.getPoints().get(0);
+            mLastSegment = new Segment(best.getSegBegin(), best.getSegEnd());
+            mLastSegmentTime = timeStamp;
+        } else if (!result.getPoints().isEmpty()) {
+            List<SegmentEstimate> estimates = ResultReducer.reduce(result.getPoints(), result.getCells());
 
-            if (activeCell == null || activeCell.getLac() == -1 || activeCell.getCid() == -1) {
-                Log.d(Constants.TAG, "return false: no active bts or lac/cid = -1");
-                return false;
-            }
+            for (SegmentEstimate estimate : estimates)
+                fix.mGeoPosition.add(new GeoPoint(estimate.getX(), estimate.getY()));
 
-            Cursor item, data = db.rawQuery(selection, args.toArray(new String[args.size()]));
-            Log.d(Constants.TAG, "sql intersections query: " + substituteArgs(selection, args));
+            SegmentEstimate best = estimates.get(0);
+            fix.mCurrentPoint = fix.mGeoPosition.getPoints().get(0);
+            Log.d(Constants.TAG, result.getPoints().size() + " rows reduced to " + estimates.size() + " segments, best " + best);
 
-            if (data.moveToFirst()) {
-                Log.d(Constants.TAG, "found bts intersections");
-                ArrayList<MetroSegment> segmentsIds = new ArrayList<>();
+            if (result.getStatus() == LocatorResult.Status.FOUND_SEGMENTS) {
+                mLastSegment = best.getSegment();
+                mLastSegmentTime = timeStamp;
+            }
+        }
 
-                do {
-                    segmentsIds.add(new MetroSegment(data.getInt(0), data.getInt(1)));
-                } while (data.moveToNext());
+        fix.mFound = result.isFound();
+        if (fix.mFound)
+            metrics.count(PipelineMetrics.COUNT_FOUND);
 
-                data.close();
+        metrics.stop(PipelineMetrics.STAGE_SEARCH, searchStart);
+        return state < 0 ? fix : getTrackedFix(tracker);
+    }
 
-                File resultFile = new File(Environment.getExternalStorageDirectory(), "Metrocell");
-                PrintWriter pw;
-                if (mSharedPreferences.getBoolean(Constants.PREF_APP_SAVE_RESULT, false)) {
-                    try {
-                        resultFile = new File(resultFile, "result");
+    /**
+     * Most likely path of the last scans, ends at the current state.
+     */
+    private Fix getTrackedFix(TrajectoryTracker tracker) {
+        Fix fix = new Fix();
+        SegmentRanker ranker = tracker.getRanker();
+        int[] path = new int[TrajectoryTracker.DEFAULT_HISTORY];
+        int count = tracker.getPath(path);
+
+        for (int i = 0; i < count; i++) {
+            fix.mCurrentPoint = new GeoPoint(ranker.getX(path[i]), ranker.getY(path[i]));
+            fix.mGeoPosition.add(fix.mCurrentPoint);
+        }
 
-                        if (resultFile.exists() || resultFile.mkdirs()) {
-                            resultFile = new File(resultFile, "log_" + System.currentTimeMillis() + ".txt");
-                            pw = new PrintWriter(new FileOutputStream(resultFile, true));
+        Log.d(Constants.TAG, "tracked " + ranker.getSegment(tracker.getState()) + " bucket " + ranker.getBucket(tracker.getState())
+                + ", " + tracker.getActiveCount() + " active states");
+        fix.mFound = count > 0;
+        return fix;
+    }
 
-                            pw.println(Constants.RESULT_HEADER);
-                            pw.close();
+    private void saveResult(List<LogPoint> points) {
+        File resultFile = new File(Environment.getExternalStorageDirectory(), "Metrocell");
+        resultFile = new File(resultFile, "result");
 
-                            Intent intent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE, Uri.fromFile(resultFile));
-                            sendBroadcast(intent);    // update media for MTP
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
+        if (resultFile.exists() || resultFile.mkdirs()) {
+            resultFile = new File(resultFile, "log_" + System.currentTimeMillis() + ".txt");
 
-                for (MetroSegment segment : segmentsIds) {
-                    selection = "select max(mins), min(maxs) from (select max(ration) as maxs, min(ration) as mins from " + SQLiteDBHelper.TABLE_POINTS;
-                    where = String.format(" where %s = ? and %s = ? and (", SQLiteDBHelper.ROW_SEG_BEGIN, SQLiteDBHelper.ROW_SEG_END);
-                    payload = String.format("(%s = ? and %s = ? and %s between ? and ?)", SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID, SQLiteDBHelper.ROW_POWER);
-                    args.clear();
-                    args.add(segment.getBeginSeg() + "");
-                    args.add(segment.getEndSeg() + "");
-
-                    for (CellEngine.GSMInfo gsmInfo : gsmInfoArray) {
-                        if (args.size() >= 4)
-                            where += " or ";
-
-                        where += payload;
-                        args.add(gsmInfo.getLac() + "");
-                        args.add(gsmInfo.getCid() + "");
-                        args.add(gsmInfo.getMinPower() - Constants.POWER_DELTA + "");
-                        args.add(gsmInfo.getMaxPower() + Constants.POWER_DELTA + "");
-                    }
-
-                    where += ")";
-                    selection += where + " group by lac, cid)";
-
-                    data = db.rawQuery(selection, args.toArray(new String[args.size()]));
-
-                    if (data.moveToFirst()) {
-                        String min = data.getString(0), max = data.getString(1);
-                        Log.d(Constants.TAG, "segment " + segment.getBeginSeg() + "-" + segment.getEndSeg() + " min: " + min + " max: " + max);
-                        Log.d(Constants.TAG, "sql min/max query: " + substituteArgs(selection, args));
-
-                        if (min == null || max == null) {
-                            Log.d(Constants.TAG, "not found rows with given power");
-                            return false;
-                        }
-
-                        args.add(min);
-                        args.add(max);
-                        selection = String.format("select %s, %s, %s, %s, %s from %s%s and %s between ? and ?",
-                                SQLiteDBHelper.ROW_LATITUDE, SQLiteDBHelper.ROW_LONGITUDE, SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID,
-                                SQLiteDBHelper.ROW_POWER, SQLiteDBHelper.TABLE_POINTS, where, SQLiteDBHelper.ROW_RATIO);
-                        item = db.rawQuery(selection, args.toArray(new String[args.size()]));
-                        Log.d(Constants.TAG, "sql x/y query: " + substituteArgs(selection, args));
-
-                        if (item.moveToFirst()) {
-                            do {
-                                mCurrentPoint = new GeoPoint(item.getDouble(0), item.getDouble(1));
-                                mGeoPosition.add(mCurrentPoint);
-
-                                if (mSharedPreferences.getBoolean(Constants.PREF_APP_SAVE_RESULT, false)) {
-                                    try {
-                                        pw = new PrintWriter(new FileOutputStream(resultFile, true));
-                                        pw.println(item.getString(2) + Constants.CSV_SEPARATOR + item.getString(3) + Constants.CSV_SEPARATOR
-                                                + item.getString(4) + Constants.CSV_SEPARATOR + item.getString(1) + Constants.CSV_SEPARATOR
-                                                + item.getString(0));
-                                        pw.close();
-                                    } catch (IOException e) {
-                                        e.printStackTrace();
-                                    }
-                                }
-                            } while (item.moveToNext());
-
-                            result = true;
-                        }
-
-                        item.close();
-                    }
-
-                    data.close();
-                }
-            } else
-                Log.d(Constants.TAG, "no bts intersections");
+            // written on result writer thread, media is updated from its listener
+            if (!((GISApplication) getApplication()).getResultWriter().submit(resultFile, points)) {
+                ((GISApplication) getApplication()).getMetrics().count(PipelineMetrics.COUNT_WRITES_DROPPED);
+                Log.d(Constants.TAG, "result writer queue is full, " + resultFile.getName() + " skipped");
+            }
+        }
+    }
 
-            // no intersections?, get active bts lat/lon only
-            if (mGeoPosition.getPointCount() == 0) {
-                selection = SQLiteDBHelper.ROW_CID + " = ? and " + SQLiteDBHelper.ROW_LAC + " = ? and " + SQLiteDBHelper.ROW_POWER + " between ? and ?";
-                data = db.query(SQLiteDBHelper.TABLE_POINTS, new String[]{SQLiteDBHelper.ROW_LATITUDE, SQLiteDBHelper.ROW_LONGITUDE, SQLiteDBHelper.ROW_POWER},
-                        selection, new String[]{activeCell.getCid() + "", activeCell.getLac() + "",
-                                activeCell.getMinPower() + "", activeCell.getMaxPower() + ""}, null, null, null);
+    private void showFix(Fix fix) {
+        if (fix.mFound) {
+            mCurrentCellLocationOverlay.setVisibility(true);
+            mCurrentCellLocationOverlay.setNewCellLine(fix.mGeoPosition);
+            setStatus(STATUS.STATUS_FOUND);
 
-                if (data.moveToFirst()) {
-                    Log.d(Constants.TAG, "found active bts only lac: " + activeCell.getLac() + " cid: " + activeCell.getCid());
+            if (fix.mCurrentPoint != null)
+                mMapView.panTo(fix.mCurrentPoint);
+        } else {
+            setStatus(STATUS.STATUS_NOT_FOUND);
+        }
+    }
 
-                    do {
-                        mCurrentPoint = new GeoPoint(data.getDouble(0), data.getDouble(1));
-                        mGeoPosition.add(mCurrentPoint);
-                    } while (data.moveToNext());
+    /**
+     * @return true if tracking is on
+     */
+    private boolean setTracking(boolean tracking) {
+        if (tracking) {
+            if (!mIsInterfaceLoaded || !checkOrCreateDatabase())
+                return false;
 
-                    result = true;
-                }
+            mTracking.start();
+            mTracking.request();
+            setStatus(STATUS.STATUS_SEARCHING);
+        } else {
+            mTracking.stop();
+        }
 
-                data.close();
-            }
+        return tracking;
+    }
+
+    /**
+     * Binary store if it is enabled, shared log_points session with fingerprint index otherwise.
+     *
+     * @return null if there is no database yet
+     */
+    private FingerprintSource getFingerprintSource() {
+        GISApplication app = (GISApplication) getApplication();
 
-            data.close();
-            db.close();
+        if (mSharedPreferences.getBoolean(Constants.PREF_APP_USE_BINARY_STORE, false)) {
+            MappedFingerprintStore store = app.getFingerprintStore();
 
-            return result;
+            if (store != null)
+                return store;
         }
 
+        FingerprintSession session = app.getFingerprintSession();
+        return session == null ? null : session.getSource();
+    }
+
+    /**
+     * Runs on tracking thread only.
+     */
+    private class TrackingTask implements Runnable {
+        private TrajectoryTracker mTracker;
+
         @Override
-        protected void onPostExecute(Boolean result) {
-            super.onPostExecute(result);
-
-            if (result != null && result) {
-                mCurrentCellLocationOverlay.setVisibility(true);
-                mCurrentCellLocationOverlay.setNewCellLine(mGeoPosition);
-                setStatus(STATUS.STATUS_FOUND);
-
-                if (mCurrentPoint != null)
-                    mMapView.panTo(mCurrentPoint);
-            } else {
-                setStatus(STATUS.STATUS_NOT_FOUND);
+        public void run() {
+            if (mTracker == null) {
+                FingerprintSession session = ((GISApplication) getApplication()).getFingerprintSession();
+
+                if (session != null)
+                    mTracker = new TrajectoryTracker(session.getRanker());
             }
+
+            final Fix fix = search(getFingerprintSource(), mTracker);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (mTracking.isStarted())
+                        showFix(fix);
+                }
+            });
         }
-    }
 
-    private String substituteArgs(String selection, ArrayList<String> args) {
-        StringBuilder sb = new StringBuilder(selection);
+        /**
+         * Next tracking starts from scratch. Runs on the old scheduler thread, which may
+         * overlap with the next session, so the tracker is reset under the search lock.
+         */
+        public void release() {
+            synchronized (MainActivity.this) {
+                if (mTracker != null)
+                    mTracker.reset();
+            }
+        }
+    }
 
-        for (int i = 0; i < args.size(); i++)
-            sb.replace(sb.indexOf("?"), sb.indexOf("?") + 1, args.get(i));
+    private class Fix {
+        boolean mFound;
+        GeoPoint mCurrentPoint;
+        GeoLineString mGeoPosition;
 
-        return sb.toString();
+        Fix() {
+            mGeoPosition = new GeoLineString();
+            mGeoPosition.setCRS(GeoConstants.CRS_WGS84);
+        }
     }
 
-    private class MetroSegment {
-        public int getBeginSeg() {
-            return mBeginSeg;
-        }
+    private class FindLocationInDB extends AsyncTask<Void, Void, Fix> {
+        @Override
+        protected Fix doInBackground(Void... params) {
+            mCurrentCellLocationOverlay.setVisibility(false);
 
-        public int getEndSeg() {
-            return mEndSeg;
+            return search(getFingerprintSource(), null);
         }
 
-        private int mBeginSeg = -1, mEndSeg = -1;
-
-        public MetroSegment(int beginSeg, int endSeg) {
-            mBeginSeg = beginSeg;
-            mEndSeg = endSeg;
+        @Override
+        protected void onPostExecute(Fix fix) {
+            super.onPostExecute(fix);
+            showFix(fix);
         }
     }
 
@@ -0,0 +1,110 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Environment;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.nextgis.metrocell.core.PipelineMetrics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Debug screen with latency percentiles of search stages and counters, can export them as text file.
+ */
+public class MetricsActivity extends AppCompatActivity {
+    private PipelineMetrics mMetrics;
+    private TextView mReport;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        if (getSupportActionBar() != null)
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+        mMetrics = ((GISApplication) getApplication()).getMetrics();
+        mReport = (TextView) findViewById(R.id.tv_report);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mReport.setText(mMetrics.getReport());
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case android.R.id.home:
+                finish();
+                return true;
+            case R.id.action_refresh:
+                mReport.setText(mMetrics.getReport());
+                return true;
+            case R.id.action_reset:
+                mMetrics.reset();
+                mReport.setText(mMetrics.getReport());
+                return true;
+            case R.id.action_export:
+                export();
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    private void export() {
+        File file = new File(Environment.getExternalStorageDirectory(), "Metrocell");
+
+        if (file.exists() || file.mkdir()) {
+            file = new File(file, "metrics_" + System.currentTimeMillis() + ".txt");
+
+            try {
+                mMetrics.write(file);
+                Intent intent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE, Uri.fromFile(file));
+                sendBroadcast(intent);    // update media for MTP
+                Toast.makeText(this, getString(R.string.metrics_exported, file.getPath()), Toast.LENGTH_LONG).show();
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        Toast.makeText(this, R.string.metrics_export_failed, Toast.LENGTH_SHORT).show();
+    }
+}
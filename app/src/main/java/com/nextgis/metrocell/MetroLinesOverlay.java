@@ -0,0 +1,148 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.nextgis.maplib.datasource.GeoPoint;
+import com.nextgis.maplib.map.MapDrawable;
+import com.nextgis.maplibui.api.Overlay;
+import com.nextgis.maplibui.mapui.MapViewOverlays;
+import com.nextgis.metrocell.core.PipelineMetrics;
+import com.nextgis.metrocell.maplib.LineTileCache;
+import com.nextgis.metrocell.maplib.MetroVectorLayer;
+
+/**
+ * Composites metro lines from {@link LineTileCache}. Missing tiles are requested on full redraws only,
+ * pans and zooms draw the cached ones moved by the gesture. Until a tile is rendered in background the
+ * part of a cached tile of lower zoom covering it is drawn stretched.
+ */
+public class MetroLinesOverlay extends Overlay implements LineTileCache.OnTileRenderedListener {
+    private final static double UNIT = 1000;
+    private final static int MAX_PARENT_LEVELS = 4;
+
+    private final LineTileCache mTiles;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF mRect = new RectF();
+    private final Rect mSource = new Rect();
+    private final GeoPoint mOrigin = new GeoPoint(0, 0), mUnit = new GeoPoint(UNIT, 0);
+    private final PipelineMetrics mMetrics;
+
+    // screen is origin + (x, -y) * scale at the last redraw
+    private double mOriginX, mOriginY, mScale;
+    private int mZoom = -1;
+
+    public MetroLinesOverlay(Context context, MapViewOverlays mapViewOverlays, MetroVectorLayer layer) {
+        super(context, mapViewOverlays);
+        mTiles = new LineTileCache(layer, (int) (Runtime.getRuntime().maxMemory() / 8), this);
+        mMetrics = ((GISApplication) context.getApplicationContext()).getMetrics();
+    }
+
+    @Override
+    public void draw(Canvas canvas, MapDrawable mapDrawable) {
+        long start = PipelineMetrics.start();
+        GeoPoint origin = mapDrawable.mapToScreen(mOrigin), unit = mapDrawable.mapToScreen(mUnit);
+        mOriginX = origin.getX();
+        mOriginY = origin.getY();
+        mScale = (unit.getX() - origin.getX()) / UNIT;
+
+        if (mScale <= 0)
+            return;
+
+        // zoom which tiles come closest to their pixel size
+        double zoom = Math.log(mScale * LineTileCache.getTileSize(0) / LineTileCache.TILE_SIZE) / Math.log(2);
+        mZoom = Math.max(0, Math.min(LineTileCache.MAX_ZOOM, (int) Math.round(zoom)));
+        drawTiles(canvas, mOriginX, mOriginY, mScale, true);
+        mMetrics.stop(PipelineMetrics.STAGE_RENDER_LINES, start);
+    }
+
+    @Override
+    public void onTileRendered() {
+        mMapViewOverlays.postInvalidate();
+    }
+
+    @Override
+    public void drawOnPanning(Canvas canvas, PointF currentMouseOffset) {
+        drawTiles(canvas, mOriginX - currentMouseOffset.x, mOriginY - currentMouseOffset.y, mScale, false);
+    }
+
+    @Override
+    public void drawOnZooming(Canvas canvas, PointF currentFocusLocation, float scale) {
+        drawTiles(canvas, currentFocusLocation.x + (mOriginX - currentFocusLocation.x) * scale,
+                currentFocusLocation.y + (mOriginY - currentFocusLocation.y) * scale, mScale * scale, false);
+    }
+
+    private void drawTiles(Canvas canvas, double originX, double originY, double scale, boolean render) {
+        if (mZoom < 0)
+            return;
+
+        int count = 1 << mZoom;
+        double size = LineTileCache.getTileSize(mZoom), half = size * count / 2;
+        double minX = -originX / scale, maxX = (canvas.getWidth() - originX) / scale;
+        double minY = (originY - canvas.getHeight()) / scale, maxY = originY / scale;
+
+        int fromX = getTile(minX + half, size, count), toX = getTile(maxX + half, size, count);
+        int fromY = getTile(half - maxY, size, count), toY = getTile(half - minY, size, count);
+
+        for (int y = fromY; y <= toY; y++) {
+            for (int x = fromX; x <= toX; x++) {
+                float left = (float) (originX + (x * size - half) * scale), top = (float) (originY + (y * size - half) * scale);
+                mRect.set(left, top, left + (float) (size * scale), top + (float) (size * scale));
+                Bitmap tile = mTiles.getCachedTile(mZoom, x, y);
+
+                if (tile != null) {
+                    canvas.drawBitmap(tile, null, mRect, mPaint);
+                    continue;
+                }
+
+                if (render)
+                    mTiles.requestTile(mZoom, x, y);
+
+                drawParent(canvas, x, y);
+            }
+        }
+    }
+
+    private void drawParent(Canvas canvas, int x, int y) {
+        for (int level = 1; level <= MAX_PARENT_LEVELS && level <= mZoom; level++) {
+            Bitmap parent = mTiles.getCachedTile(mZoom - level, x >> level, y >> level);
+            if (parent == null)
+                continue;
+
+            int part = LineTileCache.TILE_SIZE >> level, mask = (1 << level) - 1;
+            int left = (x & mask) * part, top = (y & mask) * part;
+            mSource.set(left, top, left + part, top + part);
+            canvas.drawBitmap(parent, mSource, mRect, mPaint);
+            return;
+        }
+    }
+
+    private static int getTile(double offset, double size, int count) {
+        return Math.max(0, Math.min(count - 1, (int) Math.floor(offset / size)));
+    }
+}
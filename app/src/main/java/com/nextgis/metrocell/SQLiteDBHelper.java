@@ -25,11 +25,15 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import java.io.File;
+
 public class SQLiteDBHelper extends SQLiteOpenHelper {
-    private final static int DB_VERSION = 1;
+    final static int DB_VERSION = 3;
     public final static String DB_NAME = "log_points.sqlite";
+    public final static String STORE_NAME = "log_points.bin";
 
     public final static String TABLE_POINTS = "log_points";
+    public final static String TABLE_HISTOGRAM = "power_histogram";
 
     public final static String ROW_SEG_BEGIN = "seg_begin";
     public final static String ROW_SEG_END = "seg_end";
@@ -40,24 +44,64 @@ public class SQLiteDBHelper extends SQLiteOpenHelper {
     public final static String ROW_CID = "cid";
     public final static String ROW_PSC = "psc";
     public final static String ROW_POWER = "power";
+    public final static String ROW_MIN_RATIO = "min_ratio";
+    public final static String ROW_MAX_RATIO = "max_ratio";
+    public final static String ROW_COUNT = "row_count";
+
+    public final static String INDEX_CELL = "idx_points_cell";
+    public final static String INDEX_SEGMENT = "idx_points_segment";
+    public final static String INDEX_HISTOGRAM = "idx_histogram_segment";
+
+    // covers cell -> segments lookups and the fingerprint index load
+    private final static String CREATE_INDEX_CELL = String.format("create index if not exists %s on %s (%s, %s, %s, %s)",
+            INDEX_CELL, TABLE_POINTS, ROW_LAC, ROW_CID, ROW_SEG_BEGIN, ROW_SEG_END);
+    // covers per-segment ratio interval and narrows x/y lookups to one segment
+    private final static String CREATE_INDEX_SEGMENT = String.format("create index if not exists %s on %s (%s, %s, %s, %s, %s, %s)",
+            INDEX_SEGMENT, TABLE_POINTS, ROW_SEG_BEGIN, ROW_SEG_END, ROW_LAC, ROW_CID, ROW_POWER, ROW_RATIO);
+    // log_points rows of a cell on a segment grouped by power, one bucket per dBm keeps power ranges exact;
+    // ration bounds are null if no row of the bucket has ration, like min/max over the raw rows
+    private final static String CREATE_HISTOGRAM = String.format("create table if not exists %s (%s integer, %s integer, %s integer, "
+            + "%s integer, %s integer, %s real, %s real, %s integer)", TABLE_HISTOGRAM, ROW_SEG_BEGIN, ROW_SEG_END, ROW_LAC, ROW_CID,
+            ROW_POWER, ROW_MIN_RATIO, ROW_MAX_RATIO, ROW_COUNT);
+    private final static String FILL_HISTOGRAM = String.format("insert into %s select %s, %s, %s, %s, %s, min(%s), max(%s), count(*) "
+            + "from %s group by %s, %s, %s, %s, %s", TABLE_HISTOGRAM, ROW_SEG_BEGIN, ROW_SEG_END, ROW_LAC, ROW_CID, ROW_POWER,
+            ROW_RATIO, ROW_RATIO, TABLE_POINTS, ROW_SEG_BEGIN, ROW_SEG_END, ROW_LAC, ROW_CID, ROW_POWER);
+    // covers ratio interval lookups of a segment without touching the table
+    private final static String CREATE_INDEX_HISTOGRAM = String.format("create index if not exists %s on %s (%s, %s, %s, %s, %s, %s, %s)",
+            INDEX_HISTOGRAM, TABLE_HISTOGRAM, ROW_SEG_BEGIN, ROW_SEG_END, ROW_LAC, ROW_CID, ROW_POWER, ROW_MIN_RATIO, ROW_MAX_RATIO);
 
     public SQLiteDBHelper(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
     }
 
+    /**
+     * Helper for database at given absolute path, e.g. log_points copied from assets.
+     */
+    public SQLiteDBHelper(Context context, File path) {
+        super(context, path.getPath(), null, DB_VERSION);
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
-//        if(android.os.Build.VERSION.SDK_INT >= 17){
-//            DB_PATH = context.getApplicationInfo().dataDir + "/databases/";
-//        }
-//        else
-//        {
-//            DB_PATH = "/data/data/" + context.getPackageName() + "/databases/";
-//        }
+        // log_points comes prefilled from assets with no user_version set
+        onUpgrade(db, 1, DB_VERSION);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-
+        switch (oldVersion) {
+            case 1:
+                db.execSQL(CREATE_INDEX_CELL);
+                db.execSQL(CREATE_INDEX_SEGMENT);
+                db.execSQL("analyze " + TABLE_POINTS);
+            case 2:
+                db.execSQL("drop table if exists " + TABLE_HISTOGRAM);
+                db.execSQL(CREATE_HISTOGRAM);
+                db.execSQL(FILL_HISTOGRAM);
+                db.execSQL(CREATE_INDEX_HISTOGRAM);
+                db.execSQL("analyze " + TABLE_HISTOGRAM);
+            default:
+                break;
+        }
     }
 }
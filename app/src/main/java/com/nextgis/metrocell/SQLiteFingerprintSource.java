@@ -0,0 +1,454 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.nextgis.metrocell.core.CellObservation;
+import com.nextgis.metrocell.core.FingerprintIndex;
+import com.nextgis.metrocell.core.FingerprintSource;
+import com.nextgis.metrocell.core.FingerprintStoreWriter;
+import com.nextgis.metrocell.core.LogPoint;
+import com.nextgis.metrocell.core.MappedFingerprintStore;
+import com.nextgis.metrocell.core.PipelineMetrics;
+import com.nextgis.metrocell.core.RatioInterval;
+import com.nextgis.metrocell.core.Segment;
+import com.nextgis.metrocell.core.SegmentRanker;
+import com.nextgis.metrocell.core.SegmentResolver;
+import com.nextgis.metrocell.util.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SQLiteFingerprintSource implements FingerprintSource, SegmentResolver {
+    final static String TABLE_CELLS = "observed_cells";
+    final static String TABLE_SEGMENTS = "candidate_segments";
+
+    final static String INDEX_QUERY = String.format("select distinct %s, %s, %s, %s from %s", SQLiteDBHelper.ROW_LAC,
+            SQLiteDBHelper.ROW_CID, SQLiteDBHelper.ROW_SEG_BEGIN, SQLiteDBHelper.ROW_SEG_END, SQLiteDBHelper.TABLE_POINTS);
+    final static String CELL_POINTS_QUERY = String.format("select %s, %s, %s from %s where %s = ? and %s = ? and %s between ? and ?",
+            SQLiteDBHelper.ROW_LATITUDE, SQLiteDBHelper.ROW_LONGITUDE, SQLiteDBHelper.ROW_POWER, SQLiteDBHelper.TABLE_POINTS,
+            SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID, SQLiteDBHelper.ROW_POWER);
+    // every candidate segment's ratio interval from power histogram buckets of cells heard within any of
+    // their power ranges; temp tables have no statistics, so join order and histogram index are pinned
+    // to keep planner off automatic indices and full index scans
+    final static String RATIO_INTERVALS_QUERY = String.format("select id, max(mins), min(maxs) from (select s.rowid as id, "
+            + "min(h.%s) as mins, max(h.%s) as maxs from temp.%s s cross join temp.%s c cross join %s h indexed by %s where h.%s = s.%s and h.%s = s.%s "
+            + "and h.%s = c.%s and h.%s = c.%s and h.%s between c.min_power and c.max_power group by s.rowid, h.%s, h.%s) group by id",
+            SQLiteDBHelper.ROW_MIN_RATIO, SQLiteDBHelper.ROW_MAX_RATIO, TABLE_SEGMENTS, TABLE_CELLS, SQLiteDBHelper.TABLE_HISTOGRAM,
+            SQLiteDBHelper.INDEX_HISTOGRAM, SQLiteDBHelper.ROW_SEG_BEGIN, SQLiteDBHelper.ROW_SEG_BEGIN, SQLiteDBHelper.ROW_SEG_END, SQLiteDBHelper.ROW_SEG_END,
+            SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID, SQLiteDBHelper.ROW_CID, SQLiteDBHelper.ROW_POWER,
+            SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID);
+    // points of every candidate segment inside its interval, in candidates order
+    final static String SEGMENT_POINTS_QUERY = String.format("select s.%s, s.%s, p.%s, p.%s, p.%s, p.%s, p.%s, p.%s from temp.%s s cross join %s p "
+            + "indexed by %s where p.%s = s.%s and p.%s = s.%s and p.%s between s.min_ratio and s.max_ratio and exists (select 1 from temp.%s c "
+            + "where c.%s = p.%s and c.%s = p.%s and p.%s between c.min_power and c.max_power) order by s.rowid",
+            SQLiteDBHelper.ROW_SEG_BEGIN, SQLiteDBHelper.ROW_SEG_END, SQLiteDBHelper.ROW_LATITUDE, SQLiteDBHelper.ROW_LONGITUDE,
+            SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID, SQLiteDBHelper.ROW_POWER, SQLiteDBHelper.ROW_RATIO, TABLE_SEGMENTS,
+            SQLiteDBHelper.TABLE_POINTS, SQLiteDBHelper.INDEX_SEGMENT, SQLiteDBHelper.ROW_SEG_BEGIN, SQLiteDBHelper.ROW_SEG_BEGIN, SQLiteDBHelper.ROW_SEG_END, SQLiteDBHelper.ROW_SEG_END,
+            SQLiteDBHelper.ROW_RATIO, TABLE_CELLS, SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID,
+            SQLiteDBHelper.ROW_CID, SQLiteDBHelper.ROW_POWER);
+
+    // variable-shape queries are built once per cells count
+    private final static int QUERY_CACHE_SIZE = 16;
+    private final static int QUERY_SEGMENTS = 0, QUERY_RATIO_INTERVAL = 1, QUERY_POINTS = 2;
+
+    private SQLiteDatabase mDatabase;
+    private SQLiteStatement mInsertCell, mInsertSegment, mUpdateSegment;
+    private String[] mSegmentsQueries = new String[QUERY_CACHE_SIZE];
+    private String[] mRatioIntervalQueries = new String[QUERY_CACHE_SIZE];
+    private String[] mPointsQueries = new String[QUERY_CACHE_SIZE];
+    private PipelineMetrics mMetrics;
+
+    public SQLiteFingerprintSource(SQLiteDatabase db) {
+        mDatabase = db;
+    }
+
+    /**
+     * Queries are logged with their arguments only while metrics tracing is on.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Reads every distinct (lac, cid, seg_begin, seg_end) of log_points into memory.
+     */
+    public static FingerprintIndex loadIndex(SQLiteDatabase db) {
+        FingerprintIndex.Builder builder = new FingerprintIndex.Builder();
+        Cursor data = db.rawQuery(INDEX_QUERY, null);
+
+        if (data.moveToFirst()) {
+            do {
+                builder.add(data.getInt(0), data.getInt(1), data.getInt(2), data.getInt(3));
+            } while (data.moveToNext());
+        }
+
+        data.close();
+        return builder.build();
+    }
+
+    /**
+     * Reads every log_points row with known ration into ranker states.
+     */
+    public static SegmentRanker loadRanker(SQLiteDatabase db) {
+        SegmentRanker.Builder builder = new SegmentRanker.Builder();
+        Cursor data = db.query(SQLiteDBHelper.TABLE_POINTS, new String[]{SQLiteDBHelper.ROW_SEG_BEGIN, SQLiteDBHelper.ROW_SEG_END,
+                SQLiteDBHelper.ROW_RATIO, SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID, SQLiteDBHelper.ROW_POWER,
+                SQLiteDBHelper.ROW_LATITUDE, SQLiteDBHelper.ROW_LONGITUDE}, SQLiteDBHelper.ROW_RATIO + " is not null", null, null, null, null);
+
+        if (data.moveToFirst()) {
+            do {
+                builder.add(data.getInt(0), data.getInt(1), data.getDouble(2), data.getInt(3), data.getInt(4), data.getInt(5),
+                        data.getDouble(6), data.getDouble(7));
+            } while (data.moveToNext());
+        }
+
+        data.close();
+        return builder.build();
+    }
+
+    /**
+     * Converts log_points to read-only binary store, see {@link MappedFingerprintStore}.
+     * Unknown ration is written as NaN.
+     */
+    public static void writeStore(SQLiteDatabase db, File file) throws IOException {
+        FingerprintStoreWriter writer = new FingerprintStoreWriter();
+        Cursor data = db.query(SQLiteDBHelper.TABLE_POINTS, new String[]{SQLiteDBHelper.ROW_SEG_BEGIN, SQLiteDBHelper.ROW_SEG_END,
+                SQLiteDBHelper.ROW_RATIO, SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID, SQLiteDBHelper.ROW_PSC, SQLiteDBHelper.ROW_POWER,
+                SQLiteDBHelper.ROW_LATITUDE, SQLiteDBHelper.ROW_LONGITUDE}, null, null, null, null, null);
+
+        if (data.moveToFirst()) {
+            do {
+                writer.add(data.getInt(0), data.getInt(1), data.isNull(2) ? Double.NaN : data.getDouble(2), data.getInt(3), data.getInt(4), data.getInt(5),
+                        data.getInt(6), data.getDouble(7), data.getDouble(8));
+            } while (data.moveToNext());
+        }
+
+        data.close();
+        writer.write(file);
+    }
+
+    @Override
+    public List<Segment> getSegments(List<? extends CellObservation> cells) {
+        List<Segment> result = new ArrayList<>();
+        ArrayList<String> args = new ArrayList<>();
+
+        for (CellObservation cell : cells) {
+            args.add(cell.getLac() + "");
+            args.add(cell.getCid() + "");
+        }
+
+        if (args.isEmpty())
+            return result;
+
+        String selection = getQuery(mSegmentsQueries, QUERY_SEGMENTS, cells.size());
+        Cursor data = mDatabase.rawQuery(selection, args.toArray(new String[args.size()]));
+        if (isTracing())
+            Log.d(Constants.TAG, "sql intersections query: " + substituteArgs(selection, args));
+
+        if (data.moveToFirst()) {
+            do {
+                result.add(new Segment(data.getInt(0), data.getInt(1)));
+            } while (data.moveToNext());
+        }
+
+        data.close();
+        return result;
+    }
+
+    @Override
+    public RatioInterval getRatioInterval(Segment segment, List<? extends CellObservation> cells, int powerDelta) {
+        RatioInterval result = null;
+        ArrayList<String> args = new ArrayList<>();
+        addSegmentArgs(segment, cells, powerDelta, args);
+        String selection = getQuery(mRatioIntervalQueries, QUERY_RATIO_INTERVAL, cells.size());
+
+        Cursor data = mDatabase.rawQuery(selection, args.toArray(new String[args.size()]));
+
+        if (data.moveToFirst()) {
+            if (isTracing()) {
+                Log.d(Constants.TAG, "segment " + segment + " min: " + data.getString(0) + " max: " + data.getString(1));
+                Log.d(Constants.TAG, "sql min/max query: " + substituteArgs(selection, args));
+            }
+
+            if (!data.isNull(0) && !data.isNull(1))
+                result = new RatioInterval(data.getDouble(0), data.getDouble(1));
+        }
+
+        data.close();
+        return result;
+    }
+
+    @Override
+    public void getPoints(Segment segment, List<? extends CellObservation> cells, int powerDelta, RatioInterval interval, List<LogPoint> result) {
+        ArrayList<String> args = new ArrayList<>();
+        addSegmentArgs(segment, cells, powerDelta, args);
+        args.add(interval.getMin() + "");
+        args.add(interval.getMax() + "");
+
+        String selection = getQuery(mPointsQueries, QUERY_POINTS, cells.size());
+        Cursor item = mDatabase.rawQuery(selection, args.toArray(new String[args.size()]));
+        if (isTracing())
+            Log.d(Constants.TAG, "sql x/y query: " + substituteArgs(selection, args));
+
+        if (item.moveToFirst()) {
+            do {
+                result.add(new LogPoint(segment.getBeginSeg(), segment.getEndSeg(), getRatio(item, 5), item.getInt(2), item.getInt(3),
+                        Constants.UNDEFINED, item.getInt(4), item.getDouble(0), item.getDouble(1)));
+            } while (item.moveToNext());
+        }
+
+        item.close();
+    }
+
+    /**
+     * Loads cells and segments to temp tables and resolves all segments with two grouped queries.
+     */
+    @Override
+    public synchronized boolean resolve(List<Segment> segments, List<? extends CellObservation> cells, int powerDelta, List<LogPoint> result) {
+        if (segments.isEmpty())
+            return true;
+
+        prepare();
+        mDatabase.execSQL("delete from temp." + TABLE_CELLS);
+        mDatabase.execSQL("delete from temp." + TABLE_SEGMENTS);
+
+        for (CellObservation cell : cells) {
+            mInsertCell.bindLong(1, cell.getLac());
+            mInsertCell.bindLong(2, cell.getCid());
+            mInsertCell.bindLong(3, cell.getMinPower() - powerDelta);
+            mInsertCell.bindLong(4, cell.getMaxPower() + powerDelta);
+            mInsertCell.executeInsert();
+        }
+
+        for (Segment segment : segments) {
+            mInsertSegment.bindLong(1, segment.getBeginSeg());
+            mInsertSegment.bindLong(2, segment.getEndSeg());
+            mInsertSegment.executeInsert();
+        }
+
+        int resolved = 0;
+        long[] ids = new long[segments.size()];
+        double[] mins = new double[ids.length], maxs = new double[ids.length];
+        Cursor data = mDatabase.rawQuery(RATIO_INTERVALS_QUERY, null);
+
+        while (data.moveToNext() && resolved < ids.length) {
+            // no row with ration within power ranges, like null interval of getRatioInterval
+            if (data.isNull(1) || data.isNull(2)) {
+                data.close();
+                return false;
+            }
+
+            ids[resolved] = data.getLong(0);
+            mins[resolved] = data.getDouble(1);
+            maxs[resolved] = data.getDouble(2);
+            resolved++;
+        }
+
+        data.close();
+        Log.d(Constants.TAG, "sql batch min/max: " + resolved + " of " + ids.length + " segments");
+
+        if (resolved < ids.length)
+            return false;
+
+        // candidates table is updated only after the grouped cursor is closed
+        for (int i = 0; i < ids.length; i++) {
+            mUpdateSegment.bindDouble(1, mins[i]);
+            mUpdateSegment.bindDouble(2, maxs[i]);
+            mUpdateSegment.bindLong(3, ids[i]);
+            mUpdateSegment.execute();
+        }
+
+        data = mDatabase.rawQuery(SEGMENT_POINTS_QUERY, null);
+
+        while (data.moveToNext())
+            result.add(new LogPoint(data.getInt(0), data.getInt(1), getRatio(data, 7), data.getInt(4), data.getInt(5),
+                    Constants.UNDEFINED, data.getInt(6), data.getDouble(2), data.getDouble(3)));
+
+        data.close();
+        return true;
+    }
+
+    @Override
+    public void getCellPoints(CellObservation cell, List<LogPoint> result) {
+        Cursor data = mDatabase.rawQuery(CELL_POINTS_QUERY, new String[]{cell.getLac() + "", cell.getCid() + "",
+                cell.getMinPower() + "", cell.getMaxPower() + ""});
+
+        if (data.moveToFirst()) {
+            do {
+                result.add(new LogPoint(Constants.UNDEFINED, Constants.UNDEFINED, Double.NaN, cell.getLac(), cell.getCid(),
+                        Constants.UNDEFINED, data.getInt(2), data.getDouble(0), data.getDouble(1)));
+            } while (data.moveToNext());
+        }
+
+        data.close();
+    }
+
+    /**
+     * Segments having every one of given count of cells, bound as (lac, cid) pairs.
+     */
+    static String getSegmentsQuery(int cells) {
+        String selection = "", payload = String.format("select distinct %s, %s from %s where %s = ? and %s = ?",
+                SQLiteDBHelper.ROW_SEG_BEGIN, SQLiteDBHelper.ROW_SEG_END, SQLiteDBHelper.TABLE_POINTS, SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID);
+
+        for (int i = 0; i < cells; i++) {
+            if (i > 0)
+                selection += " intersect ";
+
+            selection += payload;
+        }
+
+        return selection;
+    }
+
+    /**
+     * Ratio interval of one segment from power histogram, bound by {@link #addSegmentArgs}.
+     */
+    static String getRatioIntervalQuery(int cells) {
+        return String.format("select max(mins), min(maxs) from (select max(%s) as maxs, min(%s) as mins from %s%s group by %s, %s)",
+                SQLiteDBHelper.ROW_MAX_RATIO, SQLiteDBHelper.ROW_MIN_RATIO, SQLiteDBHelper.TABLE_HISTOGRAM, getSegmentWhere(cells),
+                SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID);
+    }
+
+    /**
+     * Points of one segment within ratio interval, bound by {@link #addSegmentArgs} and interval bounds.
+     */
+    static String getPointsQuery(int cells) {
+        return String.format("select %s, %s, %s, %s, %s, %s from %s%s and %s between ? and ?",
+                SQLiteDBHelper.ROW_LATITUDE, SQLiteDBHelper.ROW_LONGITUDE, SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID,
+                SQLiteDBHelper.ROW_POWER, SQLiteDBHelper.ROW_RATIO, SQLiteDBHelper.TABLE_POINTS, getSegmentWhere(cells), SQLiteDBHelper.ROW_RATIO);
+    }
+
+    static void addSegmentArgs(Segment segment, List<? extends CellObservation> cells, int powerDelta, List<String> args) {
+        args.add(segment.getBeginSeg() + "");
+        args.add(segment.getEndSeg() + "");
+
+        for (CellObservation cell : cells) {
+            args.add(cell.getLac() + "");
+            args.add(cell.getCid() + "");
+            args.add(cell.getMinPower() - powerDelta + "");
+            args.add(cell.getMaxPower() + powerDelta + "");
+        }
+    }
+
+    private static String getSegmentWhere(int cells) {
+        String where = String.format(" where %s = ? and %s = ? and (", SQLiteDBHelper.ROW_SEG_BEGIN, SQLiteDBHelper.ROW_SEG_END);
+        String payload = String.format("(%s = ? and %s = ? and %s between ? and ?)", SQLiteDBHelper.ROW_LAC, SQLiteDBHelper.ROW_CID, SQLiteDBHelper.ROW_POWER);
+
+        for (int i = 0; i < cells; i++) {
+            if (i > 0)
+                where += " or ";
+
+            where += payload;
+        }
+
+        return where + ")";
+    }
+
+    /**
+     * Releases compiled statements, the database stays open.
+     */
+    public synchronized void close() {
+        if (mInsertCell != null) {
+            mInsertCell.close();
+            mInsertSegment.close();
+            mUpdateSegment.close();
+            mInsertCell = null;
+        }
+    }
+
+    /**
+     * Creates temp tables and compiles statements of {@link #resolve}, then runs fixed-shape
+     * queries once so connection has them compiled before the first fix.
+     */
+    public synchronized void prepare() {
+        if (mInsertCell != null)
+            return;
+
+        mDatabase.execSQL("create temp table if not exists " + TABLE_CELLS
+                + " (lac integer, cid integer, min_power integer, max_power integer)");
+        mDatabase.execSQL("create temp table if not exists " + TABLE_SEGMENTS
+                + " (seg_begin integer, seg_end integer, min_ratio real, max_ratio real)");
+
+        mInsertCell = mDatabase.compileStatement("insert into temp." + TABLE_CELLS + " values (?, ?, ?, ?)");
+        mInsertSegment = mDatabase.compileStatement("insert into temp." + TABLE_SEGMENTS + " (seg_begin, seg_end) values (?, ?)");
+        mUpdateSegment = mDatabase.compileStatement("update temp." + TABLE_SEGMENTS + " set min_ratio = ?, max_ratio = ? where rowid = ?");
+
+        String undefined = Constants.UNDEFINED + "";
+        mDatabase.rawQuery(CELL_POINTS_QUERY, new String[]{undefined, undefined, undefined, undefined}).close();
+        mDatabase.rawQuery(RATIO_INTERVALS_QUERY, null).close();
+        mDatabase.rawQuery(SEGMENT_POINTS_QUERY, null).close();
+    }
+
+    private String getQuery(String[] cache, int type, int cells) {
+        String query = cells < cache.length ? cache[cells] : null;
+
+        if (query == null) {
+            switch (type) {
+                case QUERY_SEGMENTS:
+                    query = getSegmentsQuery(cells);
+                    break;
+                case QUERY_RATIO_INTERVAL:
+                    query = getRatioIntervalQuery(cells);
+                    break;
+                default:
+                    query = getPointsQuery(cells);
+                    break;
+            }
+
+            if (cells < cache.length)
+                cache[cells] = query;
+        }
+
+        return query;
+    }
+
+    private static double getRatio(Cursor data, int column) {
+        return data.isNull(column) ? Double.NaN : data.getDouble(column);
+    }
+
+    private boolean isTracing() {
+        return mMetrics != null && mMetrics.isTracing();
+    }
+
+    private static String substituteArgs(String selection, ArrayList<String> args) {
+        StringBuilder sb = new StringBuilder(selection.length() + args.size() * 8);
+        int arg = 0;
+
+        for (int i = 0; i < selection.length(); i++) {
+            char c = selection.charAt(i);
+
+            if (c == '?' && arg < args.size())
+                sb.append(args.get(arg++));
+            else
+                sb.append(c);
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.maplib;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.os.Process;
+import android.support.v4.util.LruCache;
+
+import com.nextgis.maplib.datasource.GeoGeometry;
+import com.nextgis.maplib.util.VectorCacheItem;
+import com.nextgis.metrocell.core.WebMercator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Metro lines rasterized into Web Mercator XYZ tiles. Tiles are kept in LRU order within a memory
+ * budget and are rendered again only after layer cache reload. Missing tiles are rendered one by one
+ * on a background thread, the listener is called after each of them.
+ */
+public class LineTileCache {
+    public final static int TILE_SIZE = 256;
+    public final static int MAX_ZOOM = 20;
+
+    public interface OnTileRenderedListener {
+        void onTileRendered();
+    }
+
+    private final MetroVectorLayer mLayer;
+    private final OnTileRenderedListener mListener;
+    private final LruCache<Long, Bitmap> mTiles;
+    private final Set<Long> mRequested = new HashSet<>();
+    private final ExecutorService mRenderer;
+    private int mCacheVersion;
+    // bumped on every eviction of all tiles, renders started before are dropped
+    private int mGeneration;
+    // tiles requested for other zooms are skipped once the map moved on
+    private volatile int mZoom = -1;
+
+    // used on render thread only
+    private final MetroLineStyle mStyle = new MetroLineStyle();
+    private final List<VectorCacheItem> mItems = new ArrayList<>();
+    private final Matrix mMatrix = new Matrix();
+
+    /**
+     * @param budget bytes of tile bitmaps
+     */
+    public LineTileCache(MetroVectorLayer layer, int budget, OnTileRenderedListener listener) {
+        mLayer = layer;
+        mListener = listener;
+        mCacheVersion = layer.getCacheVersion();
+        // evicted bitmaps are not reused, the UI thread may still be drawing them
+        mTiles = new LruCache<Long, Bitmap>(budget) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+        };
+        mRenderer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "line-tiles");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return tile size in map units
+     */
+    public static double getTileSize(int zoom) {
+        return 2 * Math.PI * WebMercator.EARTH_RADIUS / (1 << zoom);
+    }
+
+    /**
+     * Queues rendering of the tile unless it is cached or queued already.
+     */
+    public synchronized void requestTile(final int zoom, final int x, final int y) {
+        mZoom = zoom;
+        final Long key = getKey(zoom, x, y);
+
+        if (getCachedTile(zoom, x, y) != null || !mRequested.add(key))
+            return;
+
+        final int generation = mGeneration;
+        mRenderer.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap tile = zoom == mZoom ? render(zoom, x, y) : null;
+
+                synchronized (LineTileCache.this) {
+                    mRequested.remove(key);
+
+                    if (tile == null || generation != mGeneration)
+                        return;
+
+                    mTiles.put(key, tile);
+                }
+
+                if (mListener != null)
+                    mListener.onTileRendered();
+            }
+        });
+    }
+
+    /**
+     * @return null if tile is not rendered yet
+     */
+    public synchronized Bitmap getCachedTile(int zoom, int x, int y) {
+        if (mCacheVersion != mLayer.getCacheVersion()) {
+            mCacheVersion = mLayer.getCacheVersion();
+            invalidate();
+        }
+
+        return mTiles.get(getKey(zoom, x, y));
+    }
+
+    public synchronized void invalidate() {
+        mGeneration++;
+        mTiles.evictAll();
+    }
+
+    private static long getKey(int zoom, int x, int y) {
+        return (long) zoom << 48 | (long) x << 24 | y;
+    }
+
+    private Bitmap render(int zoom, int x, int y) {
+        Bitmap bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        double size = getTileSize(zoom), scale = TILE_SIZE / size;
+        double minX = x * size - Math.PI * WebMercator.EARTH_RADIUS, maxY = Math.PI * WebMercator.EARTH_RADIUS - y * size;
+        // lines near the edge stick into the tile by half of their width
+        double margin = mStyle.getLineWidth() / scale;
+
+        mItems.clear();
+        mLayer.queryCache(minX - margin, maxY - size - margin, minX + size + margin, maxY + margin, mItems);
+
+        mMatrix.setTranslate((float) -minX, (float) -maxY);
+        mMatrix.postScale((float) scale, (float) -scale);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.setMatrix(mMatrix);
+
+        for (int i = 0; i < mItems.size(); i++) {
+            GeoGeometry geometry = mItems.get(i).getGeoGeometry();
+
+            if (geometry instanceof MetroGeoLineString)
+                mStyle.draw(canvas, (MetroGeoLineString) geometry, scale);
+        }
+
+        mItems.clear();
+        return bitmap;
+    }
+}
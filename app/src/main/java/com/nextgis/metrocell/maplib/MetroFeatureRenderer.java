@@ -1,21 +1,57 @@
 package com.nextgis.metrocell.maplib;
 
+import com.nextgis.maplib.display.GISDisplay;
 import com.nextgis.maplib.display.SimpleFeatureRenderer;
 import com.nextgis.maplib.display.SimpleMarkerStyle;
 import com.nextgis.maplib.display.SimplePolygonStyle;
 import com.nextgis.maplib.display.Style;
 import com.nextgis.maplib.map.Layer;
+import com.nextgis.maplib.util.VectorCacheItem;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.nextgis.maplib.util.Constants.JSON_NAME_KEY;
 
 public class MetroFeatureRenderer extends SimpleFeatureRenderer {
+    private final List<VectorCacheItem> mVisibleItems = new ArrayList<>();
+
     public MetroFeatureRenderer(Layer layer, Style style) {
         super(layer, style);
     }
 
+    /**
+     * Draws only features intersecting display bounds, taken from the layer spatial index.
+     */
+    @Override
+    public void runDraw(GISDisplay display) {
+        if (!(mLayer instanceof MetroVectorLayer)) {
+            super.runDraw(display);
+            return;
+        }
+
+        MetroVectorLayer layer = (MetroVectorLayer) mLayer;
+        if (layer.isRasterCached()) {
+            layer.onDrawFinished(layer.getId(), 1);
+            return;
+        }
+
+        synchronized (mVisibleItems) {
+            mVisibleItems.clear();
+            layer.queryCache(display.getBounds(), mVisibleItems);
+
+            for (int i = 0; i < mVisibleItems.size(); i++)
+                mStyle.onDraw(mVisibleItems.get(i).getGeoGeometry(), display);
+
+            mVisibleItems.clear();
+        }
+
+        layer.onDrawFinished(layer.getId(), 1);
+    }
+
     @Override
     public void fromJSON(JSONObject jsonObject)
             throws JSONException
@@ -3,10 +3,19 @@ package com.nextgis.metrocell.maplib;
 import com.nextgis.maplib.datasource.GeoLineString;
 import com.nextgis.maplib.datasource.GeoPoint;
 
+import com.nextgis.metrocell.core.LineSimplifier;
+import com.nextgis.metrocell.core.WebMercator;
+
 import java.util.ArrayList;
 
 public class MetroGeoLineString extends GeoLineString {
     private int mColor = MetroLineStyle.DEFAULT_COLOR;
+    // zooms of simplified levels, coarse to fine
+    public final static int[] LOD_ZOOMS = {8, 10, 12, 14};
+
+    private transient float[] mVertices;
+    private transient double[] mTolerances;
+    private transient float[][] mLevels;
 
 //    public MetroGeoLineString()
 //    {
@@ -23,10 +32,107 @@ public class MetroGeoLineString extends GeoLineString {
         mColor = color;
     }
 
+    /**
+     * Takes points from..to of (x, y) pairs.
+     */
+    public MetroGeoLineString(double[] coordinates, int from, int to, int color)
+    {
+        mPoints = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            mPoints.add(new GeoPoint(coordinates[i * 2], coordinates[i * 2 + 1]));
+        }
+
+        mColor = color;
+    }
+
     public void setColor(int color) {
          mColor = color;
     }
     public int getColor() {
         return mColor;
     }
+
+    /**
+     * Segment pairs x0, y0, x1, y1, x1, y1, x2, y2... for a single drawLines call, built once.
+     */
+    public float[] getVertices() {
+        if (mVertices == null)
+            mVertices = getVertices(null, mPoints.size());
+
+        return mVertices;
+    }
+
+    /**
+     * @param tolerance allowed deviation in map units
+     * @return vertices of the coarsest level within tolerance, full ones if there is none
+     */
+    public float[] getVertices(double tolerance) {
+        float[][] levels = mLevels;
+
+        if (levels != null)
+            for (int i = 0; i < levels.length; i++)
+                if (mTolerances[i] <= tolerance)
+                    return levels[i];
+
+        return getVertices();
+    }
+
+    /**
+     * Precomputes Douglas-Peucker levels for {@link #LOD_ZOOMS}, each within half a pixel of its zoom.
+     */
+    public void buildLevels() {
+        int count = mPoints.size();
+        double[] coordinates = new double[count * 2];
+        for (int i = 0; i < count; i++) {
+            coordinates[i * 2] = mPoints.get(i).getX();
+            coordinates[i * 2 + 1] = mPoints.get(i).getY();
+        }
+
+        double[] tolerances = new double[LOD_ZOOMS.length];
+        float[][] levels = new float[LOD_ZOOMS.length][];
+        boolean[] keep = new boolean[count];
+
+        // finest first, coarser levels with the same points share its vertices
+        for (int i = LOD_ZOOMS.length - 1; i >= 0; i--) {
+            tolerances[i] = getTolerance(LOD_ZOOMS[i]);
+            int kept = LineSimplifier.simplify(coordinates, 0, count, tolerances[i], keep);
+
+            if (i < LOD_ZOOMS.length - 1 && levels[i + 1].length == Math.max(0, kept - 1) * 4)
+                levels[i] = levels[i + 1];
+            else
+                levels[i] = kept == count ? getVertices() : getVertices(keep, kept);
+        }
+
+        mTolerances = tolerances;
+        mLevels = levels;
+    }
+
+    /**
+     * @return half of Web Mercator pixel size at the zoom
+     */
+    public static double getTolerance(int zoom) {
+        return Math.PI * WebMercator.EARTH_RADIUS / 256 / (1 << zoom);
+    }
+
+    private float[] getVertices(boolean[] keep, int count) {
+        float[] vertices = new float[Math.max(0, count - 1) * 4];
+        GeoPoint begin = null;
+
+        for (int i = 0, v = 0; i < mPoints.size(); i++) {
+            if (keep != null && !keep[i])
+                continue;
+
+            GeoPoint end = mPoints.get(i);
+            if (begin != null) {
+                vertices[v++] = (float) begin.getX();
+                vertices[v++] = (float) begin.getY();
+                vertices[v++] = (float) end.getX();
+                vertices[v++] = (float) end.getY();
+            }
+
+            begin = end;
+        }
+
+        return vertices;
+    }
 }
@@ -1,36 +1,70 @@
 package com.nextgis.metrocell.maplib;
 
+import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.util.SparseArray;
 
 import com.nextgis.maplib.datasource.GeoLineString;
-import com.nextgis.maplib.datasource.GeoPoint;
 import com.nextgis.maplib.display.GISDisplay;
 import com.nextgis.maplib.display.SimpleLineStyle;
 
-import java.util.List;
-
 public class MetroLineStyle extends SimpleLineStyle {
     public final static int DEFAULT_COLOR = Color.DKGRAY;
 
+    private final SparseArray<Paint> mPaints = new SparseArray<>();
+    private double mScale;
+
     public MetroLineStyle() {
         super();
         mWidth = 4;
     }
 
+    /**
+     * Paints are kept per color, their width follows display scale.
+     */
     @Override
-    public void onDraw(GeoLineString lineString, GISDisplay display) {
-        Paint lnPaint = new Paint();
-
-        lnPaint.setColor(((MetroGeoLineString) lineString).getColor());
-        lnPaint.setStrokeWidth((float) (mWidth / display.getScale()));
-        lnPaint.setStrokeCap(Paint.Cap.ROUND);
-        lnPaint.setAntiAlias(true);
-
-        List<GeoPoint> points = lineString.getPoints();
-        for (int i = 1; i < points.size(); i++) {
-            display.drawLine((float) points.get(i-1).getX(), (float) points.get(i-1).getY(),
-                    (float) points.get(i).getX(), (float) points.get(i).getY(), lnPaint);
+    public synchronized void onDraw(GeoLineString lineString, GISDisplay display) {
+        setScale(display.getScale());
+
+        // half a pixel is below what antialiasing shows
+        MetroGeoLineString metroLineString = (MetroGeoLineString) lineString;
+        display.drawLines(metroLineString.getVertices(0.5 / mScale), getPaint(metroLineString.getColor()));
+    }
+
+    /**
+     * Draws on a canvas which matrix maps map units to pixels with the given scale.
+     */
+    public synchronized void draw(Canvas canvas, MetroGeoLineString lineString, double scale) {
+        setScale(scale);
+        canvas.drawLines(lineString.getVertices(0.5 / mScale), getPaint(lineString.getColor()));
+    }
+
+    public float getLineWidth() {
+        return mWidth;
+    }
+
+    private void setScale(double scale) {
+        if (scale != mScale) {
+            mScale = scale;
+
+            for (int i = 0; i < mPaints.size(); i++)
+                mPaints.valueAt(i).setStrokeWidth((float) (mWidth / mScale));
         }
     }
+
+    private Paint getPaint(int color) {
+        Paint paint = mPaints.get(color);
+
+        if (paint == null) {
+            paint = new Paint();
+            paint.setColor(color);
+            paint.setStrokeWidth((float) (mWidth / mScale));
+            paint.setStrokeCap(Paint.Cap.ROUND);
+            paint.setAntiAlias(true);
+            mPaints.put(color, paint);
+        }
+
+        return paint;
+    }
 }
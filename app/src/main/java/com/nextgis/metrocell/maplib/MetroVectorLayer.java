@@ -25,10 +25,13 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.Color;
+import android.text.TextUtils;
 
 import com.nextgis.maplib.datasource.Feature;
 import com.nextgis.maplib.datasource.Field;
+import com.nextgis.maplib.datasource.GeoEnvelope;
 import com.nextgis.maplib.datasource.GeoGeometry;
 import com.nextgis.maplib.datasource.GeoGeometryFactory;
 import com.nextgis.maplib.datasource.GeoLineString;
@@ -40,17 +43,30 @@ import com.nextgis.maplib.map.MapContentProviderHelper;
 import com.nextgis.maplib.map.VectorLayer;
 import com.nextgis.maplib.util.Constants;
 import com.nextgis.maplib.util.VectorCacheItem;
+import com.nextgis.metrocell.core.EnvelopeIndex;
+import com.nextgis.metrocell.core.GeoJsonReader;
+import com.nextgis.metrocell.core.MetroLinesStore;
+import com.nextgis.metrocell.core.WebMercator;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.nextgis.maplib.util.Constants.NOT_FOUND;
 import static com.nextgis.maplib.util.GeoConstants.CRS_WEB_MERCATOR;
@@ -59,6 +75,7 @@ import static com.nextgis.maplib.util.GeoConstants.FTDateTime;
 import static com.nextgis.maplib.util.GeoConstants.FTInteger;
 import static com.nextgis.maplib.util.GeoConstants.FTReal;
 import static com.nextgis.maplib.util.GeoConstants.FTString;
+import static com.nextgis.maplib.util.GeoConstants.GEOJSON_COORDINATES;
 import static com.nextgis.maplib.util.GeoConstants.GEOJSON_CRS;
 import static com.nextgis.maplib.util.GeoConstants.GEOJSON_GEOMETRY;
 import static com.nextgis.maplib.util.GeoConstants.GEOJSON_ID;
@@ -75,7 +92,16 @@ import static com.nextgis.maplib.util.GeoConstants.GTPoint;
 import static com.nextgis.maplib.util.GeoConstants.GTPolygon;
 
 public class MetroVectorLayer extends VectorLayer {
-    private final static String FIELD_COLOR = "color";
+    private final static String FIELD_COLOR = MetroLinesStore.FIELD_COLOR;
+    public final static String LINES_FILE = "lines.bin";
+
+    private volatile EnvelopeIndex<VectorCacheItem> mCacheIndex;
+    private volatile int mCacheVersion;
+    private volatile boolean mRasterCached;
+
+    public interface StreamSource {
+        InputStream open() throws IOException;
+    }
 
     public MetroVectorLayer(Context context, File path) {
         super(context, path);
@@ -116,6 +142,7 @@ public class MetroVectorLayer extends VectorLayer {
 
             List<Feature> features = new ArrayList<>();
             List<Field> fields = new ArrayList<>();
+            Map<String, Integer> fieldIndexes = new HashMap<>();
 
             int geometryType = GTNone;
             for (int i = 0; i < geoJSONFeatures.length(); i++) {
@@ -171,17 +198,12 @@ public class MetroVectorLayer extends VectorLayer {
                     }
 
                     if (nType != NOT_FOUND) {
-                        int fieldIndex = NOT_FOUND;
-                        for (int j = 0; j < fields.size(); j++) {
-                            if (fields.get(j).getName().equals(key)) {
-                                fieldIndex = j;
-                                break;
-                            }
-                        }
-                        if (fieldIndex == NOT_FOUND) { //add new field
+                        Integer fieldIndex = fieldIndexes.get(key);
+                        if (fieldIndex == null) { //add new field
                             Field field = new Field(nType, key, null);
                             fieldIndex = fields.size();
                             fields.add(field);
+                            fieldIndexes.put(key, fieldIndex);
                         }
                         feature.setFieldValue(fieldIndex, value);
                     }
@@ -196,13 +218,358 @@ public class MetroVectorLayer extends VectorLayer {
         }
     }
 
+    /**
+     * Imports GeoJSON without loading it whole: the first pass collects fields, geometry type and crs,
+     * the second one stores features one by one as they are read, in one transaction.
+     */
+    public String createFromGeoJSON(StreamSource source) {
+        Map<String, Integer> fieldTypes = new LinkedHashMap<>();
+        int geometryType = GTNone;
+        boolean isWGS84;
+        GeoJsonReader reader = null;
+
+        try {
+            reader = new GeoJsonReader(new InputStreamReader(source.open(), "UTF-8"));
+
+            while (reader.next()) {
+                int type = getGeometryType(reader.getGeometryType());
+
+                if (geometryType == GTNone)
+                    geometryType = type;
+                else if (geometryType != type)
+                    continue;
+
+                for (int i = 0; i < reader.getPropertyCount(); i++) {
+                    int nType = getFieldType(reader.getPropertyValue(i));
+                    Integer knownType = fieldTypes.get(reader.getPropertyName(i));
+
+                    if (nType != NOT_FOUND && (knownType == null || (knownType == FTInteger && nType == FTReal)))
+                        fieldTypes.put(reader.getPropertyName(i), nType);
+                }
+            }
+
+            switch (reader.isWgs84() ? "" : reader.getCrsName()) {
+                case "":
+                    isWGS84 = true;
+                    break;
+                case "urn:ogc:def:crs:EPSG::3857":
+                case "EPSG:3857":  //Web Mercator
+                    isWGS84 = false;
+                    break;
+                default:
+                    return mContext.getString(com.nextgis.maplib.R.string.error_crs_unsupported);
+            }
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+            return e.getLocalizedMessage();
+        } finally {
+            close(reader);
+        }
+
+        if (geometryType == GTNone)
+            return mContext.getString(com.nextgis.maplib.R.string.error_empty_dataset);
+
+        List<Field> fields = new ArrayList<>();
+        Map<String, Integer> fieldIndexes = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : fieldTypes.entrySet()) {
+            fieldIndexes.put(entry.getKey(), fields.size());
+            fields.add(new Field(entry.getValue(), entry.getKey(), null));
+        }
+
+        MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
+        SQLiteDatabase db = map.getDatabase(false);
+        SQLiteStatement insert = null;
+        Object[] values = new Object[fields.size()];
+        int index = 0;
+
+        try {
+            reader = new GeoJsonReader(new InputStreamReader(source.open(), "UTF-8"));
+
+            while (reader.next()) {
+                int nId = reader.hasId() ? (int) reader.getId() : index;
+                index++;
+
+                if (getGeometryType(reader.getGeometryType()) != geometryType)
+                    continue;
+
+                Arrays.fill(values, null);
+                for (int i = 0; i < reader.getPropertyCount(); i++) {
+                    Integer fieldIndex = fieldIndexes.get(reader.getPropertyName(i));
+                    if (fieldIndex != null && getFieldType(reader.getPropertyValue(i)) != NOT_FOUND)
+                        values[fieldIndex] = reader.getPropertyValue(i);
+                }
+
+                GeoGeometry geometry = createGeometry(reader, isWGS84);
+
+                // the first feature creates the table the usual way, the rest is streamed into it
+                if (insert == null) {
+                    Feature feature = new Feature(nId, fields);
+                    feature.setGeometry(geometry);
+
+                    for (int i = 0; i < values.length; i++)
+                        if (values[i] != null)
+                            feature.setFieldValue(i, values[i]);
+
+                    List<Feature> features = new ArrayList<>();
+                    features.add(feature);
+                    String errorMessage = initialize(fields, features, NOT_FOUND);
+
+                    if (!TextUtils.isEmpty(errorMessage))
+                        return errorMessage;
+
+                    insert = db.compileStatement(getInsertQuery(fields));
+                    db.beginTransaction();
+                    continue;
+                }
+
+                insert.clearBindings();
+                insert.bindLong(1, nId);
+                insert.bindBlob(2, geometry.toBlob());
+
+                for (int i = 0; i < values.length; i++)
+                    bindValue(insert, i + 3, fields.get(i).getType(), values[i]);
+
+                insert.executeInsert();
+            }
+
+            if (insert != null)
+                db.setTransactionSuccessful();
+
+            return "";
+        } catch (IOException | JSONException | SQLiteException | NumberFormatException e) {
+            e.printStackTrace();
+            return e.getLocalizedMessage();
+        } finally {
+            if (insert != null) {
+                db.endTransaction();
+                insert.close();
+            }
+
+            close(reader);
+        }
+    }
+
+    /**
+     * Creates layer from prebaked lines. The store is kept next to the layer, so the cache is
+     * built from it on every start with no blob deserialization.
+     */
+    public String createFromLinesStore(StreamSource source) {
+        File file = new File(mPath, LINES_FILE);
+        MetroLinesStore store;
+
+        try {
+            if (!mPath.exists() && !mPath.mkdirs())
+                throw new IOException("Can't create " + mPath);
+
+            copy(source.open(), file);
+            store = MetroLinesStore.map(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+
+            if (file.exists() && !file.delete())
+                file.deleteOnExit();
+
+            return e.getLocalizedMessage();
+        }
+
+        List<Field> fields = new ArrayList<>();
+        fields.add(new Field(FTString, MetroLinesStore.FIELD_NAME, null));
+        fields.add(new Field(FTString, FIELD_COLOR, null));
+
+        List<Feature> features = new ArrayList<>(store.getCount());
+        double[] coordinates = new double[1024];
+
+        for (int i = 0; i < store.getCount(); i++) {
+            coordinates = getCoordinates(store, i, coordinates);
+            GeoGeometry geometry = new MetroGeoLineString(coordinates, 0, store.getEnd(i) - store.getBegin(i), MetroLineStyle.DEFAULT_COLOR);
+            geometry.setCRS(CRS_WEB_MERCATOR);
+
+            Feature feature = new Feature(i, fields);
+            feature.setGeometry(geometry);
+            feature.setFieldValue(0, store.getName(i));
+
+            if (store.getColor(i) != 0)
+                feature.setFieldValue(1, String.format("#%06x", store.getColor(i) & 0xFFFFFF));
+
+            features.add(feature);
+        }
+
+        return initialize(fields, features, NOT_FOUND);
+    }
+
+    private static double[] getCoordinates(MetroLinesStore store, int line, double[] buffer) {
+        int size = (store.getEnd(line) - store.getBegin(line)) * 2;
+        if (size > buffer.length)
+            buffer = new double[Math.max(size, buffer.length * 2)];
+
+        store.getCoordinates(line, buffer);
+        return buffer;
+    }
+
+    private static void copy(InputStream input, File file) throws IOException {
+        OutputStream output = null;
+
+        try {
+            output = new FileOutputStream(file);
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+
+            while ((read = input.read(buffer)) >= 0)
+                output.write(buffer, 0, read);
+        } finally {
+            input.close();
+
+            if (output != null)
+                output.close();
+        }
+    }
+
+    private String getInsertQuery(List<Field> fields) {
+        StringBuilder columns = new StringBuilder(Constants.FIELD_ID + ", " + Constants.FIELD_GEOM);
+        StringBuilder args = new StringBuilder("?, ?");
+
+        for (Field field : fields) {
+            columns.append(", ").append(field.getName());
+            args.append(", ?");
+        }
+
+        return "insert into " + mPath.getName() + " (" + columns + ") values (" + args + ")";
+    }
+
+    private static void bindValue(SQLiteStatement statement, int index, int type, Object value) {
+        if (value == null)
+            statement.bindNull(index);
+        else if (type == FTInteger && value instanceof Number)
+            statement.bindLong(index, ((Number) value).longValue());
+        else if (type == FTReal && value instanceof Number)
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        else
+            statement.bindString(index, value.toString());
+    }
+
+    private static int getFieldType(Object value) {
+        if (value instanceof Integer || value instanceof Long)
+            return FTInteger;
+        else if (value instanceof Double || value instanceof Float)
+            return FTReal;
+        else if (value instanceof String)
+            return FTString;
+
+        return NOT_FOUND;
+    }
+
+    private static int getGeometryType(String type) {
+        if (type == null)
+            return GTNone;
+
+        switch (type) {
+            case "Point":
+                return GTPoint;
+            case "LineString":
+                return GTLineString;
+            case "Polygon":
+                return GTPolygon;
+            case "MultiPoint":
+                return GTMultiPoint;
+            case "MultiLineString":
+                return GTMultiLineString;
+            case "MultiPolygon":
+                return GTMultiPolygon;
+            default:
+                return GTNone;
+        }
+    }
+
+    /**
+     * Projects reader buffer in place. Lines are built directly, other geometries go through their json.
+     */
+    private static GeoGeometry createGeometry(GeoJsonReader reader, boolean isWGS84) throws JSONException {
+        double[] coordinates = reader.getCoordinates();
+        if (isWGS84)
+            WebMercator.project(coordinates, 0, reader.getPointCount());
+
+        GeoGeometry geometry;
+        if (GTLineString == getGeometryType(reader.getGeometryType())) {
+            geometry = new MetroGeoLineString(coordinates, 0, reader.getPointCount(), MetroLineStyle.DEFAULT_COLOR);
+        } else {
+            JSONObject jsonGeometry = new JSONObject();
+            jsonGeometry.put(GEOJSON_TYPE, reader.getGeometryType());
+            jsonGeometry.put(GEOJSON_COORDINATES, getCoordinates(reader));
+            geometry = GeoGeometryFactory.fromJson(jsonGeometry);
+        }
+
+        geometry.setCRS(CRS_WEB_MERCATOR);
+        return geometry;
+    }
+
+    private static Object getCoordinates(GeoJsonReader reader) throws JSONException {
+        switch (getGeometryType(reader.getGeometryType())) {
+            case GTPoint:
+                return getPositions(reader, 0, 1).get(0);
+            case GTMultiPoint:
+                return getPositions(reader, 0, reader.getPointCount());
+            case GTPolygon:
+            case GTMultiLineString:
+                return getParts(reader, 0, reader.getPartCount());
+            default:
+                JSONArray polygons = new JSONArray();
+                for (int i = 0; i < reader.getPolygonCount(); i++)
+                    polygons.put(getParts(reader, i == 0 ? 0 : reader.getPolygonEnd(i - 1), reader.getPolygonEnd(i)));
+
+                return polygons;
+        }
+    }
+
+    private static JSONArray getParts(GeoJsonReader reader, int from, int to) throws JSONException {
+        JSONArray parts = new JSONArray();
+        for (int i = from; i < to; i++)
+            parts.put(getPositions(reader, i == 0 ? 0 : reader.getPartEnd(i - 1), reader.getPartEnd(i)));
+
+        return parts;
+    }
+
+    private static JSONArray getPositions(GeoJsonReader reader, int from, int to) throws JSONException {
+        double[] coordinates = reader.getCoordinates();
+        JSONArray positions = new JSONArray();
+
+        for (int i = from; i < to; i++) {
+            JSONArray position = new JSONArray();
+            position.put(coordinates[i * 2]);
+            position.put(coordinates[i * 2 + 1]);
+            positions.put(position);
+        }
+
+        return positions;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
     @Override
     public void reloadCache() throws SQLiteException {
+        File file = new File(mPath, LINES_FILE);
+
+        if (file.exists()) {
+            try {
+                reloadCache(MetroLinesStore.map(file));
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
         //load vector cache
         MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
         SQLiteDatabase db = map.getDatabase(false);
         String[] columns = new String[]{Constants.FIELD_ID, Constants.FIELD_GEOM, FIELD_COLOR};
         Cursor cursor = db.query(mPath.getName(), columns, null, null, null, null, null);
+        EnvelopeIndex.Builder<VectorCacheItem> index = new EnvelopeIndex.Builder<>();
 
         if (null != cursor) {
             if (cursor.moveToFirst()) {
@@ -219,12 +586,17 @@ public class MetroVectorLayer extends VectorLayer {
 
                                 }
 
-                                geoGeometry = new MetroGeoLineString((GeoLineString) geoGeometry, color);
+                                MetroGeoLineString lineString = new MetroGeoLineString((GeoLineString) geoGeometry, color);
+                                lineString.buildLevels();
+                                geoGeometry = lineString;
                             }
 
                             int nId = cursor.getInt(0);
-                            mExtents.merge(geoGeometry.getEnvelope());
-                            mVectorCacheItems.add(new VectorCacheItem(geoGeometry, nId));
+                            GeoEnvelope envelope = geoGeometry.getEnvelope();
+                            VectorCacheItem item = new VectorCacheItem(geoGeometry, nId);
+                            mExtents.merge(envelope);
+                            mVectorCacheItems.add(item);
+                            index.add(item, envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY());
                         }
                     } catch (IOException | ClassNotFoundException e) {
                         e.printStackTrace();
@@ -234,6 +606,81 @@ public class MetroVectorLayer extends VectorLayer {
 
             cursor.close();
         }
+
+        mCacheIndex = index.build();
+        mCacheVersion++;
+    }
+
+    /**
+     * Builds cache from prebaked lines, ids follow lines order like in {@link #createFromLinesStore}.
+     */
+    private void reloadCache(MetroLinesStore store) {
+        EnvelopeIndex.Builder<VectorCacheItem> index = new EnvelopeIndex.Builder<>();
+        double[] coordinates = new double[1024];
+
+        for (int i = 0; i < store.getCount(); i++) {
+            coordinates = getCoordinates(store, i, coordinates);
+            int color = store.getColor(i) != 0 ? store.getColor(i) : MetroLineStyle.DEFAULT_COLOR;
+            MetroGeoLineString geometry = new MetroGeoLineString(coordinates, 0, store.getEnd(i) - store.getBegin(i), color);
+            geometry.setCRS(CRS_WEB_MERCATOR);
+            geometry.buildLevels();
+
+            VectorCacheItem item = new VectorCacheItem(geometry, i);
+            mExtents.merge(geometry.getEnvelope());
+            mVectorCacheItems.add(item);
+            index.add(item, store.getMinX(i), store.getMinY(i), store.getMaxX(i), store.getMaxY(i));
+        }
+
+        mCacheIndex = index.build();
+        mCacheVersion++;
+    }
+
+    /**
+     * Adds cached features which envelopes intersect the given one, for drawing and hit-testing.
+     *
+     * @return number of features added
+     */
+    public int queryCache(GeoEnvelope envelope, List<VectorCacheItem> result) {
+        return queryCache(envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY(), result);
+    }
+
+    public int queryCache(double minX, double minY, double maxX, double maxY, List<VectorCacheItem> result) {
+        EnvelopeIndex<VectorCacheItem> index = mCacheIndex;
+
+        if (index == null) {
+            int count = 0;
+
+            for (VectorCacheItem item : mVectorCacheItems) {
+                GeoEnvelope envelope = item.getGeoGeometry().getEnvelope();
+
+                if (envelope.getMinX() <= maxX && envelope.getMaxX() >= minX && envelope.getMinY() <= maxY && envelope.getMaxY() >= minY) {
+                    result.add(item);
+                    count++;
+                }
+            }
+
+            return count;
+        }
+
+        return index.query(minX, minY, maxX, maxY, result);
+    }
+
+    /**
+     * @return changes every time cache is reloaded
+     */
+    public int getCacheVersion() {
+        return mCacheVersion;
+    }
+
+    /**
+     * Leaves drawing to {@link LineTileCache} tiles composited by an overlay.
+     */
+    public void setRasterCached(boolean rasterCached) {
+        mRasterCached = rasterCached;
+    }
+
+    public boolean isRasterCached() {
+        return mRasterCached;
     }
 
     @Override
@@ -28,6 +28,12 @@ public interface Constants {
 
     int ACCUMULATION_TIME = 5;
     int POWER_DELTA = 5;
+    int TRACKING_DELAY = 300;
+    int RANKED_STATES = 3;
+    int NEIGHBORHOOD_HOPS = 3;
+    int NEIGHBORHOOD_TIME = 60;
+    int FIX_CACHE_SIZE = 64;
+    int FIX_CACHE_TIME = 30;
 
     String RESULT_HEADER = "lac" + CSV_SEPARATOR + "cid" + CSV_SEPARATOR + "power" + CSV_SEPARATOR + "lat" + CSV_SEPARATOR + "lon";
 
@@ -38,4 +44,6 @@ public interface Constants {
     String PREF_APP_USE_INVALID_LAC_CID = "use_invalid_lac_cid";
     String PREF_APP_SAVE_LOGCAT = "save_logcat";
     String PREF_APP_SAVE_RESULT = "save_result";
+    String PREF_APP_USE_BINARY_STORE = "use_binary_store";
+    String PREF_APP_TRACE_QUERIES = "trace_queries";
 }
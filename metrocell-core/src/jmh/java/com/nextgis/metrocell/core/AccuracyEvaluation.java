@@ -0,0 +1,142 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Positioning accuracy on {@link SyntheticDataset}, complements timings of {@link PipelineBenchmark}.
+ * Run with ./gradlew :metrocell-core:evaluateAccuracy
+ */
+public class AccuracyEvaluation {
+    private final static int SEGMENTS = 200, ROWS_PER_SEGMENT = 20, CELLS_PER_SEGMENT = 4;
+    private final static int RANK_SCANS = 2000;
+    // ride noise: share of cells heard and power error amplitude in dBm
+    private final static int RIDE_CELLS_DIVISOR = 4, RIDE_NOISE = 20;
+    private final static long RIDE_SCAN_TIME = 5000;
+
+    public static void main(String[] args) {
+        // scans draw noise from dataset, so every evaluation gets a fresh one to be reproducible alone
+        SyntheticDataset dataset = createDataset();
+        SegmentRanker ranker = createRanker(dataset);
+        System.out.println(String.format(Locale.US, "%d segments, %d states, %d cells", SEGMENTS, ranker.getStateCount(),
+                ranker.getCellCount()));
+
+        evaluateRanking(dataset, ranker);
+
+        dataset = createDataset();
+        evaluateTracking(dataset, createRanker(dataset));
+    }
+
+    static SyntheticDataset createDataset() {
+        return new SyntheticDataset(SEGMENTS, ROWS_PER_SEGMENT, CELLS_PER_SEGMENT, 1);
+    }
+
+    static SegmentRanker createRanker(SyntheticDataset dataset) {
+        SegmentRanker.Builder builder = new SegmentRanker.Builder();
+
+        for (LogPoint row : dataset.getRows())
+            builder.add(row);
+
+        return builder.build();
+    }
+
+    /**
+     * Share of scans at random places whose best ranked state is on the true segment,
+     * as is and with one neighbor cell dropped.
+     */
+    static void evaluateRanking(SyntheticDataset dataset, SegmentRanker ranker) {
+        Random random = new Random(2);
+        int[] states = new int[1];
+        float[] scores = new float[1];
+        int hits = 0, droppedHits = 0;
+
+        for (int i = 0; i < RANK_SCANS; i++) {
+            double position = 1 + random.nextDouble() * (SEGMENTS - 3);
+            List<CellObservation> cells = dataset.scan(position, 0);
+
+            ranker.rank(cells, 1, states, scores);
+            if (ranker.getSegment(states[0]).getBeginSeg() == (int) position)
+                hits++;
+
+            cells.remove(random.nextInt(cells.size()));
+            ranker.rank(cells, 1, states, scores);
+            if (ranker.getSegment(states[0]).getBeginSeg() == (int) position)
+                droppedHits++;
+        }
+
+        System.out.println(String.format(Locale.US, "ranking: best state on true segment in %.1f%% of %d scans, %.1f%% with one cell dropped",
+                100.0 * hits / RANK_SCANS, RANK_SCANS, 100.0 * droppedHits / RANK_SCANS));
+    }
+
+    /**
+     * Mean error in segments of single-scan ranking and of the tracker along a noisy ride,
+     * and how many fixes are more than one segment off.
+     */
+    static void evaluateTracking(SyntheticDataset dataset, SegmentRanker ranker) {
+        TrajectoryTracker tracker = new TrajectoryTracker(ranker);
+        Random random = new Random(5);
+        int[] states = new int[1];
+        float[] scores = new float[1];
+        double position = 3, rankError = 0, trackError = 0;
+        long timeStamp = 1000000;
+        int scans = 0, rankJumps = 0, trackJumps = 0;
+
+        while (position < SEGMENTS - 10) {
+            List<CellObservation> cells = dataset.scan(position, timeStamp);
+            Collections.shuffle(cells, random);
+            cells = new ArrayList<>(cells.subList(0, Math.max(1, cells.size() / RIDE_CELLS_DIVISOR)));
+
+            for (CellObservation cell : cells) {
+                int power = cell.getRssi() + random.nextInt(RIDE_NOISE * 2 + 1) - RIDE_NOISE;
+                cell.setMinPower(power);
+                cell.setMaxPower(power);
+            }
+
+            ranker.rank(cells, 1, states, scores);
+            double error = getError(ranker, states[0], position);
+            rankError += error;
+            if (error > 1)
+                rankJumps++;
+
+            error = getError(ranker, tracker.update(cells, timeStamp), position);
+            trackError += error;
+            if (error > 1)
+                trackJumps++;
+
+            scans++;
+            position += 0.03 + random.nextDouble() * 0.04;
+            timeStamp += RIDE_SCAN_TIME;
+        }
+
+        System.out.println(String.format(Locale.US, "tracking: %d scans, mean error %.2f segments (%d over one) against %.2f (%d over one) "
+                + "for single-scan ranking", scans, trackError / scans, trackJumps, rankError / scans, rankJumps));
+    }
+
+    private static double getError(SegmentRanker ranker, int state, double position) {
+        return Math.abs(ranker.getSegment(state).getBeginSeg() + ranker.getRatio(state) - position);
+    }
+}
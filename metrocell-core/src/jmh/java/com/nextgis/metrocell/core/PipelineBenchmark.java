@@ -0,0 +1,162 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of every positioning stage against synthetic log_points.
+ * Run with ./gradlew :metrocell-core:jmh, allocations are reported by the gc profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+    @Param({"50", "200"})
+    public int segments;
+
+    @Param({"20"})
+    public int rowsPerSegment;
+
+    @Param({"4"})
+    public int cellsPerSegment;
+
+    private Locator mLocator;
+    private FingerprintIndex mIndex;
+    private Locator mMappedLocator;
+    private List<List<CellObservation>> mScans;
+    private ObservationWindow mWindow;
+    private CellSnapshot mLastScan;
+    private CellAggregator mAggregator = new CellAggregator();
+    private List<CellObservation> mCells;
+    private List<Segment> mSegments;
+    private SegmentRanker mRanker;
+    private int[] mRankedStates = new int[5];
+    private float[] mRankedScores = new float[5];
+    private TrajectoryTracker mTracker;
+    private long mTrackTime;
+
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticDataset dataset = new SyntheticDataset(segments, rowsPerSegment, cellsPerSegment, 42);
+        mLocator = new Locator(new MemoryFingerprintSource(dataset.getRows()), 5);
+        mIndex = FingerprintIndex.fromRows(dataset.getRows());
+
+        FingerprintStoreWriter writer = new FingerprintStoreWriter();
+        for (LogPoint row : dataset.getRows())
+            writer.add(row);
+
+        File store = File.createTempFile("log_points", ".bin");
+        store.deleteOnExit();
+        writer.write(store);
+        mMappedLocator = new Locator(new MappedFingerprintStore(store), 5);
+        mScans = dataset.scans(segments / 2 + 0.3, 5);
+        mCells = Accumulator.accumulate(mScans);
+
+        mWindow = new ObservationWindow(Long.MAX_VALUE);
+        for (List<CellObservation> scan : mScans) {
+            mLastScan = new CellSnapshot();
+            mLastScan.clear(scan.get(0).getTimeStamp());
+
+            for (CellObservation cell : scan)
+                mLastScan.add(cell);
+
+            mWindow.publish(mLastScan);
+        }
+        mSegments = mLocator.match(mCells);
+
+        SegmentRanker.Builder builder = new SegmentRanker.Builder();
+        for (LogPoint row : dataset.getRows())
+            builder.add(row);
+        mRanker = builder.build();
+        mTracker = new TrajectoryTracker(mRanker);
+    }
+
+    @Benchmark
+    public List<CellObservation> accumulate() {
+        return Accumulator.accumulate(mScans);
+    }
+
+    @Benchmark
+    public CellAggregator aggregateWindow() {
+        mAggregator.clear();
+        mWindow.aggregate(0, mAggregator);
+        return mAggregator;
+    }
+
+    @Benchmark
+    public List<Segment> match() {
+        return mLocator.match(mCells);
+    }
+
+    @Benchmark
+    public List<Segment> matchIndexed() {
+        return mIndex.getSegments(mCells);
+    }
+
+    @Benchmark
+    public List<LogPoint> resolve() {
+        List<LogPoint> result = new ArrayList<>();
+        mLocator.resolve(mSegments, mCells, result);
+        return result;
+    }
+
+    @Benchmark
+    public int rank() {
+        return mRanker.rank(mCells, mRankedStates.length, mRankedStates, mRankedScores);
+    }
+
+    @Benchmark
+    public int track() {
+        mTrackTime += 5000;
+        return mTracker.update(mCells, mTrackTime);
+    }
+
+    @Benchmark
+    public LocatorResult locate() {
+        return mLocator.locate(mCells, true);
+    }
+
+    @Benchmark
+    public LocatorResult locateMapped() {
+        return mMappedLocator.locate(mCells, true);
+    }
+}
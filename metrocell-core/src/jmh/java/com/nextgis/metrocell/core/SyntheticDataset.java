@@ -0,0 +1,114 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates log_points-like survey of a straight metro line with cells placed along it,
+ * and scans a phone would get at some place of that line.
+ */
+public class SyntheticDataset {
+    public final static int LAC = 7700;
+
+    private final static double STATION_STEP = 0.01;    // degrees between stations
+    private final static double CELL_RANGE = 1.5;       // in segments
+    private final static int RSSI_NEAR = -50;
+    private final static int RSSI_FAR = -110;
+
+    private int mSegments, mRowsPerSegment, mCellsPerSegment;
+    private Random mRandom;
+    private List<LogPoint> mRows = new ArrayList<>();
+
+    public SyntheticDataset(int segments, int rowsPerSegment, int cellsPerSegment, long seed) {
+        mSegments = segments;
+        mRowsPerSegment = rowsPerSegment;
+        mCellsPerSegment = cellsPerSegment;
+        mRandom = new Random(seed);
+
+        for (int s = 0; s < segments; s++)
+            for (int i = 0; i < rowsPerSegment; i++) {
+                double ratio = (double) i / (rowsPerSegment - 1);
+                double position = s + ratio;
+
+                for (int cid = firstCell(position); cid <= lastCell(position); cid++) {
+                    int power = power(cid, position);
+                    mRows.add(new LogPoint(s, s + 1, ratio, LAC, cid, CellObservation.UNDEFINED, power,
+                            position * STATION_STEP, 55.75));
+                }
+            }
+    }
+
+    public List<LogPoint> getRows() {
+        return mRows;
+    }
+
+    public int getSegments() {
+        return mSegments;
+    }
+
+    /**
+     * @param position segment number plus ration on it
+     */
+    public List<CellObservation> scan(double position, long timeStamp) {
+        List<CellObservation> result = new ArrayList<>();
+        int active = CellObservation.UNDEFINED, best = Integer.MIN_VALUE;
+
+        for (int cid = firstCell(position); cid <= lastCell(position); cid++) {
+            int power = power(cid, position);
+
+            if (power > best) {
+                best = power;
+                active = cid;
+            }
+        }
+
+        for (int cid = firstCell(position); cid <= lastCell(position); cid++)
+            result.add(new CellObservation(timeStamp, cid == active, 1, 250, 1, LAC, cid, CellObservation.UNDEFINED, power(cid, position)));
+
+        return result;
+    }
+
+    public List<List<CellObservation>> scans(double position, int count) {
+        List<List<CellObservation>> result = new ArrayList<>();
+
+        for (int i = 0; i < count; i++)
+            result.add(scan(position, i * 1000L));
+
+        return result;
+    }
+
+    private int firstCell(double position) {
+        return Math.max(0, (int) Math.ceil((position - CELL_RANGE) * mCellsPerSegment));
+    }
+
+    private int lastCell(double position) {
+        return Math.min(mSegments * mCellsPerSegment, (int) Math.floor((position + CELL_RANGE) * mCellsPerSegment));
+    }
+
+    private int power(int cid, double position) {
+        double distance = Math.abs(position - (double) cid / mCellsPerSegment) / CELL_RANGE;
+        return (int) (RSSI_NEAR + (RSSI_FAR - RSSI_NEAR) * distance) + mRandom.nextInt(5) - 2;
+    }
+}
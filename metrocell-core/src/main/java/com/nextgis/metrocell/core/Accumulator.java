@@ -0,0 +1,78 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges several scans into one: keeps cells of the last scan which were also heard before
+ * and sets their power bounds from the earlier scans.
+ */
+public class Accumulator {
+    public static <T extends CellObservation> List<T> accumulate(List<? extends List<T>> snapshots) {
+        List<T> result = new ArrayList<>();
+
+        if (snapshots.isEmpty())
+            return result;
+
+        CellAggregator aggregator = new CellAggregator();
+        for (int i = 0; i < snapshots.size() - 1; i++) {
+            aggregator.nextSnapshot();
+
+            for (T item : snapshots.get(i))
+                aggregator.add(item);
+        }
+
+        for (T item : snapshots.get(snapshots.size() - 1)) {
+            int slot = aggregator.find(CellKey.pack(item));
+
+            if (slot != -1) {
+                item.setMaxPower(aggregator.getMaxRssi(slot));
+                item.setMinPower(aggregator.getMinRssi(slot));
+                result.add(item);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Keeps cells of the last scan found in aggregated earlier scans, see {@link ObservationWindow#aggregate}.
+     */
+    public static List<CellObservation> accumulate(CellAggregator aggregator, CellSnapshot last) {
+        List<CellObservation> result = new ArrayList<>();
+
+        for (int i = 0; i < last.size(); i++) {
+            int slot = aggregator.find(last.getKey(i));
+
+            if (slot != -1) {
+                CellObservation item = last.get(i);
+                item.setMaxPower(aggregator.getMaxRssi(slot));
+                item.setMinPower(aggregator.getMinRssi(slot));
+                result.add(item);
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.Arrays;
+
+/**
+ * Per-cell power statistics over several scans, in an open addressing table keyed by
+ * {@link CellKey}. Every observation is O(1) and nothing is allocated until the table grows.
+ */
+public class CellAggregator {
+    private final static long EMPTY = Long.MIN_VALUE;
+    private final static float LOAD_FACTOR = 0.5f;
+
+    private long[] mKeys;
+    private int[] mMin, mMax, mCount, mSnapshots, mLastSnapshot;
+    private long[] mSum;
+    private int mSize, mSnapshot;
+
+    public CellAggregator() {
+        this(16);
+    }
+
+    public CellAggregator(int expectedCells) {
+        allocate(Math.max(16, Integer.highestOneBit(Math.max(1, (int) (expectedCells / LOAD_FACTOR))) * 2));
+    }
+
+    public void clear() {
+        Arrays.fill(mKeys, EMPTY);
+        mSize = 0;
+        mSnapshot = 0;
+    }
+
+    /**
+     * Starts next scan, cells added after it are counted as seen in one more snapshot.
+     */
+    public void nextSnapshot() {
+        mSnapshot++;
+    }
+
+    public int getSnapshotCount() {
+        return mSnapshot;
+    }
+
+    public void add(CellObservation cell) {
+        add(CellKey.pack(cell), cell.getRssi());
+    }
+
+    public void add(long key, int rssi) {
+        if (mSize + 1 > mKeys.length * LOAD_FACTOR)
+            rehash(mKeys.length * 2);
+
+        int slot = slot(key);
+        if (mKeys[slot] == EMPTY) {
+            mKeys[slot] = key;
+            mMin[slot] = mMax[slot] = rssi;
+            mSum[slot] = 0;
+            mCount[slot] = 0;
+            mSnapshots[slot] = 0;
+            mLastSnapshot[slot] = -1;
+            mSize++;
+        }
+
+        if (mMin[slot] > rssi)
+            mMin[slot] = rssi;
+
+        if (mMax[slot] < rssi)
+            mMax[slot] = rssi;
+
+        mSum[slot] += rssi;
+        mCount[slot]++;
+
+        if (mLastSnapshot[slot] != mSnapshot) {
+            mLastSnapshot[slot] = mSnapshot;
+            mSnapshots[slot]++;
+        }
+    }
+
+    /**
+     * @return slot of the cell or -1 if it was not observed
+     */
+    public int find(long key) {
+        int slot = slot(key);
+        return mKeys[slot] == EMPTY ? -1 : slot;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getMinRssi(int slot) {
+        return mMin[slot];
+    }
+
+    public int getMaxRssi(int slot) {
+        return mMax[slot];
+    }
+
+    public double getMeanRssi(int slot) {
+        return (double) mSum[slot] / mCount[slot];
+    }
+
+    /**
+     * @return number of scans where the cell was heard
+     */
+    public int getSnapshots(int slot) {
+        return mSnapshots[slot];
+    }
+
+    private int slot(long key) {
+        int mask = mKeys.length - 1;
+        int slot = hash(key) & mask;
+
+        while (mKeys[slot] != EMPTY && mKeys[slot] != key)
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        Arrays.fill(mKeys, EMPTY);
+        mMin = new int[capacity];
+        mMax = new int[capacity];
+        mSum = new long[capacity];
+        mCount = new int[capacity];
+        mSnapshots = new int[capacity];
+        mLastSnapshot = new int[capacity];
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = mKeys, sum = mSum;
+        int[] min = mMin, max = mMax, count = mCount, snapshots = mSnapshots, lastSnapshot = mLastSnapshot;
+        allocate(capacity);
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == EMPTY)
+                continue;
+
+            int slot = slot(keys[i]);
+            mKeys[slot] = keys[i];
+            mMin[slot] = min[i];
+            mMax[slot] = max[i];
+            mSum[slot] = sum[i];
+            mCount[slot] = count[i];
+            mSnapshots[slot] = snapshots[i];
+            mLastSnapshot[slot] = lastSnapshot[i];
+        }
+    }
+}
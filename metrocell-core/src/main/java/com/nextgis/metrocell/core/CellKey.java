@@ -0,0 +1,46 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+/**
+ * Packs lac and cid into one primitive key.
+ */
+public final class CellKey {
+    private CellKey() {
+    }
+
+    public static long pack(int lac, int cid) {
+        return ((long) lac << 32) | (cid & 0xffffffffL);
+    }
+
+    public static long pack(CellObservation cell) {
+        return pack(cell.getLac(), cell.getCid());
+    }
+
+    public static int getLac(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int getCid(long key) {
+        return (int) key;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+/**
+ * Single cell tower as seen by the phone at some moment.
+ * Power bounds are filled by {@link Accumulator} from several snapshots.
+ */
+public class CellObservation {
+    public final static int UNDEFINED = -1;
+
+    private long mTimeStamp;
+    private boolean mActive;
+    private int mNetworkType;
+    private int mMcc;
+    private int mMnc;
+    private int mLac;
+    private int mCid;
+    private int mPsc;
+    private int mRssi;
+    private int mMinPower, mMaxPower;
+
+    public CellObservation(long timeStamp, boolean active, int networkType, int mcc, int mnc, int lac, int cid, int psc, int rssi) {
+        mTimeStamp = timeStamp;
+        mActive = active;
+        mNetworkType = networkType;
+        mMcc = mcc;
+        mMnc = mnc;
+        mLac = lac;
+        mCid = cid;
+        mPsc = psc;
+        mRssi = mMinPower = mMaxPower = rssi;
+    }
+
+    public long getTimeStamp() {
+        return mTimeStamp;
+    }
+
+    public boolean isActive() {
+        return mActive;
+    }
+
+    public int getNetworkType() {
+        return mNetworkType;
+    }
+
+    public int getMcc() {
+        return mMcc;
+    }
+
+    public int getMnc() {
+        return mMnc;
+    }
+
+    public int getLac() {
+        return mLac;
+    }
+
+    public int getCid() {
+        return mCid;
+    }
+
+    public int getPsc() {
+        return mPsc;
+    }
+
+    public int getRssi() {
+        return mRssi;
+    }
+
+    public int getMinPower() {
+        return mMinPower;
+    }
+
+    public int getMaxPower() {
+        return mMaxPower;
+    }
+
+    public void setMinPower(int minPower) {
+        mMinPower = minPower;
+    }
+
+    public void setMaxPower(int maxPower) {
+        mMaxPower = maxPower;
+    }
+
+    public boolean isInvalid() {
+        return mLac == UNDEFINED && mCid == UNDEFINED;
+    }
+
+    public boolean isSameCell(CellObservation item) {
+        return item.getCid() == mCid && item.getLac() == mLac;
+    }
+}
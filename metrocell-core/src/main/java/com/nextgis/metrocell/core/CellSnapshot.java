@@ -0,0 +1,139 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.Arrays;
+
+/**
+ * One scan of visible cells kept column-wise in reusable arrays, so a scan can be
+ * refilled over and over without allocating an object per cell.
+ */
+public class CellSnapshot {
+    private long mTimeStamp;
+    private int mSize;
+    private boolean[] mActive;
+    private int[] mNetworkType, mMcc, mMnc, mLac, mCid, mPsc, mRssi;
+
+    public CellSnapshot() {
+        this(16);
+    }
+
+    public CellSnapshot(int capacity) {
+        mActive = new boolean[capacity];
+        mNetworkType = new int[capacity];
+        mMcc = new int[capacity];
+        mMnc = new int[capacity];
+        mLac = new int[capacity];
+        mCid = new int[capacity];
+        mPsc = new int[capacity];
+        mRssi = new int[capacity];
+    }
+
+    public void clear(long timeStamp) {
+        mTimeStamp = timeStamp;
+        mSize = 0;
+    }
+
+    public void add(boolean active, int networkType, int mcc, int mnc, int lac, int cid, int psc, int rssi) {
+        if (mSize == mLac.length) {
+            int capacity = mSize * 2;
+            mActive = Arrays.copyOf(mActive, capacity);
+            mNetworkType = Arrays.copyOf(mNetworkType, capacity);
+            mMcc = Arrays.copyOf(mMcc, capacity);
+            mMnc = Arrays.copyOf(mMnc, capacity);
+            mLac = Arrays.copyOf(mLac, capacity);
+            mCid = Arrays.copyOf(mCid, capacity);
+            mPsc = Arrays.copyOf(mPsc, capacity);
+            mRssi = Arrays.copyOf(mRssi, capacity);
+        }
+
+        mActive[mSize] = active;
+        mNetworkType[mSize] = networkType;
+        mMcc[mSize] = mcc;
+        mMnc[mSize] = mnc;
+        mLac[mSize] = lac;
+        mCid[mSize] = cid;
+        mPsc[mSize] = psc;
+        mRssi[mSize] = rssi;
+        mSize++;
+    }
+
+    public void add(CellObservation cell) {
+        add(cell.isActive(), cell.getNetworkType(), cell.getMcc(), cell.getMnc(), cell.getLac(), cell.getCid(), cell.getPsc(), cell.getRssi());
+    }
+
+    public long getTimeStamp() {
+        return mTimeStamp;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isActive(int i) {
+        return mActive[i];
+    }
+
+    public boolean isRegistered() {
+        for (int i = 0; i < mSize; i++)
+            if (mActive[i])
+                return true;
+
+        return false;
+    }
+
+    public int getNetworkType(int i) {
+        return mNetworkType[i];
+    }
+
+    public int getMcc(int i) {
+        return mMcc[i];
+    }
+
+    public int getMnc(int i) {
+        return mMnc[i];
+    }
+
+    public int getLac(int i) {
+        return mLac[i];
+    }
+
+    public int getCid(int i) {
+        return mCid[i];
+    }
+
+    public int getPsc(int i) {
+        return mPsc[i];
+    }
+
+    public int getRssi(int i) {
+        return mRssi[i];
+    }
+
+    public long getKey(int i) {
+        return CellKey.pack(mLac[i], mCid[i]);
+    }
+
+    public CellObservation get(int i) {
+        return new CellObservation(mTimeStamp, mActive[i], mNetworkType[i], mMcc[i], mMnc[i], mLac[i], mCid[i], mPsc[i], mRssi[i]);
+    }
+}
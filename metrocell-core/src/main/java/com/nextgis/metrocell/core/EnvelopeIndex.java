@@ -0,0 +1,193 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Static R-tree over item envelopes, packed with Sort-Tile-Recursive. Every level keeps boxes as
+ * minX, minY, maxX, maxY quadruples, nodes refer to their children by index in the level below.
+ */
+public class EnvelopeIndex<T> {
+    public final static int DEFAULT_NODE_CAPACITY = 16;
+
+    private final Object[] mItems;
+    // level 0 boxes are items, the last level is the root
+    private final double[][] mBoxes;
+    // level L node n has level L - 1 nodes children[L][offsets[L][n]..offsets[L][n + 1]]
+    private final int[][] mOffsets, mChildren;
+    private final int[] mStack;
+
+    EnvelopeIndex(Object[] items, double[][] boxes, int[][] offsets, int[][] children, int nodeCapacity) {
+        mItems = items;
+        mBoxes = boxes;
+        mOffsets = offsets;
+        mChildren = children;
+        mStack = new int[2 * (nodeCapacity * boxes.length + 1)];
+    }
+
+    public int size() {
+        return mItems.length;
+    }
+
+    /**
+     * Adds items which envelopes intersect the given one.
+     *
+     * @return number of items added
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int query(double minX, double minY, double maxX, double maxY, List<T> result) {
+        if (mItems.length == 0)
+            return 0;
+
+        int count = 0, top = 0;
+        int[] stack = mStack;
+        stack[top++] = mBoxes.length - 1;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            int node = stack[--top], level = stack[--top];
+            double[] boxes = mBoxes[level];
+            int b = node * 4;
+
+            if (boxes[b] > maxX || boxes[b + 2] < minX || boxes[b + 1] > maxY || boxes[b + 3] < minY)
+                continue;
+
+            if (level == 0) {
+                result.add((T) mItems[node]);
+                count++;
+                continue;
+            }
+
+            int[] offsets = mOffsets[level], children = mChildren[level];
+            for (int c = offsets[node]; c < offsets[node + 1]; c++) {
+                stack[top++] = level - 1;
+                stack[top++] = children[c];
+            }
+        }
+
+        return count;
+    }
+
+    public static class Builder<T> {
+        private final int mNodeCapacity;
+        private Object[] mItems = new Object[256];
+        private double[] mBoxes = new double[256 * 4];
+        private int mSize;
+
+        public Builder() {
+            this(DEFAULT_NODE_CAPACITY);
+        }
+
+        public Builder(int nodeCapacity) {
+            mNodeCapacity = Math.max(2, nodeCapacity);
+        }
+
+        public Builder<T> add(T item, double minX, double minY, double maxX, double maxY) {
+            if (mSize == mItems.length) {
+                mItems = Arrays.copyOf(mItems, mSize * 2);
+                mBoxes = Arrays.copyOf(mBoxes, mSize * 8);
+            }
+
+            mItems[mSize] = item;
+            mBoxes[mSize * 4] = minX;
+            mBoxes[mSize * 4 + 1] = minY;
+            mBoxes[mSize * 4 + 2] = maxX;
+            mBoxes[mSize * 4 + 3] = maxY;
+            mSize++;
+            return this;
+        }
+
+        public EnvelopeIndex<T> build() {
+            double[][] levels = new double[32][];
+            int[][] offsets = new int[32][], children = new int[32][];
+            double[] boxes = Arrays.copyOf(mBoxes, mSize * 4);
+            levels[0] = boxes;
+            int levelCount = 1, count = mSize;
+
+            while (count > 1) {
+                // every level is tiled on its own, parents take consecutive nodes of the tiled order
+                Integer[] order = sort(boxes, count);
+                int parents = (count + mNodeCapacity - 1) / mNodeCapacity;
+                double[] parentBoxes = new double[parents * 4];
+                int[] parentOffsets = new int[parents + 1];
+                int[] parentChildren = new int[count];
+
+                for (int p = 0; p < parents; p++) {
+                    int begin = p * mNodeCapacity, end = Math.min(count, begin + mNodeCapacity);
+                    parentOffsets[p + 1] = end;
+                    System.arraycopy(boxes, order[begin] * 4, parentBoxes, p * 4, 4);
+
+                    for (int c = begin; c < end; c++) {
+                        int child = order[c];
+                        parentChildren[c] = child;
+                        parentBoxes[p * 4] = Math.min(parentBoxes[p * 4], boxes[child * 4]);
+                        parentBoxes[p * 4 + 1] = Math.min(parentBoxes[p * 4 + 1], boxes[child * 4 + 1]);
+                        parentBoxes[p * 4 + 2] = Math.max(parentBoxes[p * 4 + 2], boxes[child * 4 + 2]);
+                        parentBoxes[p * 4 + 3] = Math.max(parentBoxes[p * 4 + 3], boxes[child * 4 + 3]);
+                    }
+                }
+
+                levels[levelCount] = parentBoxes;
+                offsets[levelCount] = parentOffsets;
+                children[levelCount] = parentChildren;
+                levelCount++;
+                boxes = parentBoxes;
+                count = parents;
+            }
+
+            return new EnvelopeIndex<>(Arrays.copyOf(mItems, mSize), Arrays.copyOf(levels, levelCount), Arrays.copyOf(offsets, levelCount),
+                    Arrays.copyOf(children, levelCount), mNodeCapacity);
+        }
+
+        /**
+         * Sort-Tile-Recursive order: vertical slices by center x, each slice by center y.
+         */
+        private Integer[] sort(final double[] boxes, int count) {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++)
+                order[i] = i;
+
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lhs, Integer rhs) {
+                    return Double.compare(boxes[lhs * 4] + boxes[lhs * 4 + 2], boxes[rhs * 4] + boxes[rhs * 4 + 2]);
+                }
+            });
+
+            int nodes = (count + mNodeCapacity - 1) / mNodeCapacity;
+            int slice = (int) Math.ceil(Math.sqrt(nodes)) * mNodeCapacity;
+
+            for (int begin = 0; begin < count; begin += slice)
+                Arrays.sort(order, begin, Math.min(count, begin + slice), new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer lhs, Integer rhs) {
+                        return Double.compare(boxes[lhs * 4 + 1] + boxes[lhs * 4 + 3], boxes[rhs * 4 + 1] + boxes[rhs * 4 + 3]);
+                    }
+                });
+
+            return order;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Inverted index from packed (lac, cid) to sorted ids of segments where the cell was heard.
+ * Keys and postings are kept in flat arrays: postings of mKeys[i] are
+ * mPostings[mOffsets[i] .. mOffsets[i + 1]).
+ */
+public class FingerprintIndex {
+    private Segment[] mSegments;
+    private long[] mSegmentKeys;
+    private long[] mKeys;
+    private int[] mOffsets;
+    private int[] mPostings;
+
+    private FingerprintIndex(Segment[] segments, long[] segmentKeys, long[] keys, int[] offsets, int[] postings) {
+        mSegments = segments;
+        mSegmentKeys = segmentKeys;
+        mKeys = keys;
+        mOffsets = offsets;
+        mPostings = postings;
+    }
+
+    public static FingerprintIndex fromRows(List<LogPoint> rows) {
+        Builder builder = new Builder();
+
+        for (LogPoint row : rows)
+            builder.add(row.getLac(), row.getCid(), row.getSegBegin(), row.getSegEnd());
+
+        return builder.build();
+    }
+
+    public int getCellCount() {
+        return mKeys.length;
+    }
+
+    public int getSegmentCount() {
+        return mSegments.length;
+    }
+
+    public Segment getSegment(int id) {
+        return mSegments[id];
+    }
+
+    /**
+     * @return segment id or -1 if the segment is unknown
+     */
+    public int getSegmentId(int segBegin, int segEnd) {
+        int i = Arrays.binarySearch(mSegmentKeys, CellKey.pack(segBegin, segEnd));
+        return i < 0 ? -1 : i;
+    }
+
+    /**
+     * @return position of the cell in index or -1 if it was never heard
+     */
+    public int find(long key) {
+        int i = Arrays.binarySearch(mKeys, key);
+        return i < 0 ? -1 : i;
+    }
+
+    public int getPostingsCount(int cell) {
+        return mOffsets[cell + 1] - mOffsets[cell];
+    }
+
+    /**
+     * Segments where every given cell was heard, in ascending id order.
+     */
+    public List<Segment> getSegments(List<? extends CellObservation> cells) {
+        List<Segment> result = new ArrayList<>();
+
+        if (cells.isEmpty())
+            return result;
+
+        // intersect starting from the shortest postings list
+        int[] order = new int[cells.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = find(CellKey.pack(cells.get(i)));
+
+            if (order[i] == -1)
+                return result;
+        }
+
+        sortByPostingsCount(order);
+
+        int first = order[0];
+        int[] buffer = Arrays.copyOfRange(mPostings, mOffsets[first], mOffsets[first + 1]);
+        int size = buffer.length;
+
+        for (int i = 1; i < order.length && size > 0; i++)
+            size = intersect(buffer, size, mPostings, mOffsets[order[i]], mOffsets[order[i] + 1]);
+
+        for (int i = 0; i < size; i++)
+            result.add(mSegments[buffer[i]]);
+
+        return result;
+    }
+
+    /**
+     * Leaves in buffer only ids also present in postings[from, to), both being sorted.
+     *
+     * @return new size of buffer
+     */
+    static int intersect(int[] buffer, int size, int[] postings, int from, int to) {
+        int i = 0, j = from, k = 0;
+
+        while (i < size && j < to) {
+            if (buffer[i] < postings[j]) {
+                i++;
+            } else if (buffer[i] > postings[j]) {
+                j++;
+            } else {
+                buffer[k++] = buffer[i++];
+                j++;
+            }
+        }
+
+        return k;
+    }
+
+    private void sortByPostingsCount(int[] cells) {
+        for (int i = 1; i < cells.length; i++) {
+            int cell = cells[i], count = getPostingsCount(cell), j = i - 1;
+
+            for (; j >= 0 && getPostingsCount(cells[j]) > count; j--)
+                cells[j + 1] = cells[j];
+
+            cells[j + 1] = cell;
+        }
+    }
+
+    public static class Builder {
+        private long[] mKeys = new long[1024];
+        private long[] mSegs = new long[1024];
+        private int mSize;
+
+        public Builder add(int lac, int cid, int segBegin, int segEnd) {
+            if (mSize == mKeys.length) {
+                mKeys = Arrays.copyOf(mKeys, mSize * 2);
+                mSegs = Arrays.copyOf(mSegs, mSize * 2);
+            }
+
+            mKeys[mSize] = CellKey.pack(lac, cid);
+            mSegs[mSize] = CellKey.pack(segBegin, segEnd);
+            mSize++;
+            return this;
+        }
+
+        public FingerprintIndex build() {
+            // segment dictionary, ids follow (seg_begin, seg_end) order
+            long[] segs = Arrays.copyOf(mSegs, mSize);
+            Arrays.sort(segs);
+            int segCount = unique(segs, segs.length);
+            Segment[] segments = new Segment[segCount];
+
+            for (int i = 0; i < segCount; i++)
+                segments[i] = new Segment(CellKey.getLac(segs[i]), CellKey.getCid(segs[i]));
+
+            // (cell, segment id) pairs sorted by cell, then by id
+            long[] pairs = Arrays.copyOf(mKeys, mSize);
+            long[] pairSegs = Arrays.copyOf(mSegs, mSize);
+            sort(pairs, pairSegs, 0, mSize - 1);
+
+            int[] ids = new int[mSize];
+            for (int i = 0; i < mSize; i++)
+                ids[i] = Arrays.binarySearch(segs, 0, segCount, pairSegs[i]);
+
+            long[] keys = new long[mSize];
+            int[] offsets = new int[mSize + 1];
+            int[] postings = new int[mSize];
+            int cellCount = 0, postingsCount = 0;
+
+            for (int i = 0; i < mSize; i++) {
+                if (cellCount == 0 || keys[cellCount - 1] != pairs[i]) {
+                    keys[cellCount] = pairs[i];
+                    offsets[cellCount++] = postingsCount;
+                } else if (postings[postingsCount - 1] == ids[i]) {
+                    continue;
+                }
+
+                postings[postingsCount++] = ids[i];
+            }
+
+            offsets[cellCount] = postingsCount;
+            return new FingerprintIndex(segments, Arrays.copyOf(segs, segCount), Arrays.copyOf(keys, cellCount), Arrays.copyOf(offsets, cellCount + 1),
+                    Arrays.copyOf(postings, postingsCount));
+        }
+
+        private static int unique(long[] values, int size) {
+            int k = 0;
+
+            for (int i = 0; i < size; i++)
+                if (k == 0 || values[k - 1] != values[i])
+                    values[k++] = values[i];
+
+            return k;
+        }
+
+        /**
+         * Sorts keys with their segments by (key, segment).
+         */
+        private static void sort(long[] keys, long[] segs, int low, int high) {
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                long pivotKey = keys[mid], pivotSeg = segs[mid];
+                int i = low, j = high;
+
+                while (i <= j) {
+                    while (keys[i] < pivotKey || (keys[i] == pivotKey && segs[i] < pivotSeg))
+                        i++;
+
+                    while (keys[j] > pivotKey || (keys[j] == pivotKey && segs[j] > pivotSeg))
+                        j--;
+
+                    if (i <= j) {
+                        long key = keys[i];
+                        keys[i] = keys[j];
+                        keys[j] = key;
+
+                        long seg = segs[i];
+                        segs[i] = segs[j];
+                        segs[j] = seg;
+
+                        i++;
+                        j--;
+                    }
+                }
+
+                // recurse into the smaller part to keep the stack shallow
+                if (j - low < high - i) {
+                    sort(keys, segs, low, j);
+                    low = i;
+                } else {
+                    sort(keys, segs, i, high);
+                    high = j;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.List;
+
+/**
+ * Storage of surveyed fingerprints. Every method mirrors one query against log_points.
+ */
+public interface FingerprintSource {
+    /**
+     * Segments where every given cell was heard.
+     */
+    List<Segment> getSegments(List<? extends CellObservation> cells);
+
+    /**
+     * Ration bounds on the segment where all given cells were heard within their power range
+     * widened by powerDelta, or null if there is no such row.
+     */
+    RatioInterval getRatioInterval(Segment segment, List<? extends CellObservation> cells, int powerDelta);
+
+    /**
+     * Rows of the segment inside the interval, heard by any of the given cells within its power range.
+     */
+    void getPoints(Segment segment, List<? extends CellObservation> cells, int powerDelta, RatioInterval interval, List<LogPoint> result);
+
+    /**
+     * Rows where the cell was heard within its power range.
+     */
+    void getCellPoints(CellObservation cell, List<LogPoint> result);
+}
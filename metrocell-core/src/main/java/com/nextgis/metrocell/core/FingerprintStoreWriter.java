@@ -0,0 +1,146 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Collects log_points rows and writes them in {@link MappedFingerprintStore} format.
+ */
+public class FingerprintStoreWriter {
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    private long[] mKeys = new long[1024];
+    private long[] mSegments = new long[1024];
+    private int[] mPowers = new int[1024];
+    private int[] mPscs = new int[1024];
+    private double[] mRatios = new double[1024];
+    private double[] mXs = new double[1024];
+    private double[] mYs = new double[1024];
+    private int mCount;
+
+    public FingerprintStoreWriter add(int segBegin, int segEnd, double ratio, int lac, int cid, int psc, int power, double x, double y) {
+        if (mCount == mKeys.length) {
+            int size = mCount * 2;
+            mKeys = Arrays.copyOf(mKeys, size);
+            mSegments = Arrays.copyOf(mSegments, size);
+            mPowers = Arrays.copyOf(mPowers, size);
+            mPscs = Arrays.copyOf(mPscs, size);
+            mRatios = Arrays.copyOf(mRatios, size);
+            mXs = Arrays.copyOf(mXs, size);
+            mYs = Arrays.copyOf(mYs, size);
+        }
+
+        mKeys[mCount] = CellKey.pack(lac, cid);
+        mSegments[mCount] = CellKey.pack(segBegin, segEnd);
+        mPowers[mCount] = power;
+        mPscs[mCount] = psc;
+        mRatios[mCount] = ratio;
+        mXs[mCount] = x;
+        mYs[mCount] = y;
+        mCount++;
+        return this;
+    }
+
+    public FingerprintStoreWriter add(LogPoint row) {
+        return add(row.getSegBegin(), row.getSegEnd(), row.getRatio(), row.getLac(), row.getCid(), row.getPsc(), row.getPower(),
+                row.getX(), row.getY());
+    }
+
+    public void write(File file) throws IOException {
+        Integer[] order = new Integer[mCount];
+        for (int i = 0; i < mCount; i++)
+            order[i] = i;
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                int result = compareLong(mKeys[lhs], mKeys[rhs]);
+
+                if (result == 0)
+                    result = compareLong(mSegments[lhs], mSegments[rhs]);
+
+                if (result == 0)
+                    result = mPowers[lhs] < mPowers[rhs] ? -1 : (mPowers[lhs] == mPowers[rhs] ? 0 : 1);
+
+                return result;
+            }
+        });
+
+        FileOutputStream output = new FileOutputStream(file);
+        FileChannel channel = output.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            buffer.putInt(MappedFingerprintStore.MAGIC);
+            buffer.putInt(MappedFingerprintStore.VERSION);
+            buffer.putInt(mCount);
+            buffer.putInt(0);
+
+            for (Integer i : order)
+                buffer = put(channel, buffer, 8).putLong(mKeys[i]);
+            for (Integer i : order)
+                buffer = put(channel, buffer, 8).putLong(mSegments[i]);
+            for (Integer i : order)
+                buffer = put(channel, buffer, 4).putInt(mPowers[i]);
+            for (Integer i : order)
+                buffer = put(channel, buffer, 4).putInt(mPscs[i]);
+            for (Integer i : order)
+                buffer = put(channel, buffer, 8).putDouble(mRatios[i]);
+            for (Integer i : order)
+                buffer = put(channel, buffer, 8).putDouble(mXs[i]);
+            for (Integer i : order)
+                buffer = put(channel, buffer, 8).putDouble(mYs[i]);
+
+            flush(channel, buffer);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static ByteBuffer put(FileChannel channel, ByteBuffer buffer, int size) throws IOException {
+        if (buffer.remaining() < size)
+            flush(channel, buffer);
+
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+
+        buffer.clear();
+    }
+
+    private static int compareLong(long lhs, long rhs) {
+        return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+    }
+}
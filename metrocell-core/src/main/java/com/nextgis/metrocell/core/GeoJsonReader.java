@@ -0,0 +1,341 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads FeatureCollection one feature at a time. Coordinates of the current feature are flattened
+ * into a reused (x, y) buffer: lines and rings end at part ends, polygons of a multipolygon end at
+ * polygon ends. Feature properties are kept as Long, Double, String or Boolean values, nested ones
+ * are skipped.
+ */
+public class GeoJsonReader implements Closeable {
+    public final static String CRS_WGS84 = "urn:ogc:def:crs:OGC:1.3:CRS84";
+
+    private final JsonTokenReader mReader;
+    private boolean mStarted, mInFeatures;
+    private String mCrsName;
+
+    private long mId;
+    private boolean mHasId;
+    private String mGeometryType;
+    private double[] mCoordinates = new double[1024];
+    private int[] mPartEnds = new int[16], mPolygonEnds = new int[16];
+    private int mPointCount, mPartCount, mPolygonCount;
+    private final List<String> mPropertyNames = new ArrayList<>();
+    private final List<Object> mPropertyValues = new ArrayList<>();
+
+    public GeoJsonReader(Reader reader) {
+        mReader = new JsonTokenReader(reader);
+    }
+
+    /**
+     * Moves to the next feature.
+     *
+     * @return false at the end of collection
+     */
+    public boolean next() throws IOException {
+        if (!mStarted) {
+            mStarted = true;
+            mReader.beginObject();
+
+            if (readMembers())
+                return readFeature();
+
+            return false;
+        }
+
+        if (!mInFeatures)
+            return false;
+
+        if (mReader.hasNext())
+            return readFeature();
+
+        mReader.endArray();
+        mInFeatures = false;
+
+        // members can follow features too
+        if (readMembers())
+            return readFeature();
+
+        return false;
+    }
+
+    /**
+     * @return crs name read so far, null if collection has no crs member, which means WGS84
+     */
+    public String getCrsName() {
+        return mCrsName;
+    }
+
+    public boolean isWgs84() {
+        return mCrsName == null || CRS_WGS84.equals(mCrsName);
+    }
+
+    public boolean hasId() {
+        return mHasId;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * @return GeoJSON geometry type, null if feature has no geometry
+     */
+    public String getGeometryType() {
+        return mGeometryType;
+    }
+
+    public double[] getCoordinates() {
+        return mCoordinates;
+    }
+
+    public int getPointCount() {
+        return mPointCount;
+    }
+
+    public int getPartCount() {
+        return mPartCount;
+    }
+
+    /**
+     * @return index of the point after the last one of the part
+     */
+    public int getPartEnd(int part) {
+        return mPartEnds[part];
+    }
+
+    public int getPolygonCount() {
+        return mPolygonCount;
+    }
+
+    /**
+     * @return index of the part after the last ring of the polygon
+     */
+    public int getPolygonEnd(int polygon) {
+        return mPolygonEnds[polygon];
+    }
+
+    public int getPropertyCount() {
+        return mPropertyNames.size();
+    }
+
+    public String getPropertyName(int i) {
+        return mPropertyNames.get(i);
+    }
+
+    public Object getPropertyValue(int i) {
+        return mPropertyValues.get(i);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    /**
+     * Reads collection members up to features array.
+     *
+     * @return true if features array is entered and not empty
+     */
+    private boolean readMembers() throws IOException {
+        while (mReader.hasNext()) {
+            String name = mReader.nextName();
+
+            if (name.equals("crs")) {
+                readCrs();
+            } else if (name.equals("features")) {
+                mReader.beginArray();
+                mInFeatures = true;
+
+                if (mReader.hasNext())
+                    return true;
+
+                mReader.endArray();
+                mInFeatures = false;
+            } else {
+                mReader.skipValue();
+            }
+        }
+
+        mReader.endObject();
+        return false;
+    }
+
+    private void readCrs() throws IOException {
+        mReader.beginObject();
+
+        while (mReader.hasNext()) {
+            if (mReader.nextName().equals("properties") && mReader.peek() == JsonTokenReader.Token.BEGIN_OBJECT) {
+                mReader.beginObject();
+
+                while (mReader.hasNext()) {
+                    if (mReader.nextName().equals("name"))
+                        mCrsName = mReader.nextString();
+                    else
+                        mReader.skipValue();
+                }
+
+                mReader.endObject();
+            } else {
+                mReader.skipValue();
+            }
+        }
+
+        mReader.endObject();
+    }
+
+    private boolean readFeature() throws IOException {
+        mHasId = false;
+        mGeometryType = null;
+        mPointCount = mPartCount = mPolygonCount = 0;
+        mPropertyNames.clear();
+        mPropertyValues.clear();
+
+        mReader.beginObject();
+
+        while (mReader.hasNext()) {
+            String name = mReader.nextName();
+            JsonTokenReader.Token token = mReader.peek();
+
+            if (name.equals("id") && token == JsonTokenReader.Token.NUMBER) {
+                mId = mReader.nextLong();
+                mHasId = true;
+            } else if (name.equals("geometry") && token == JsonTokenReader.Token.BEGIN_OBJECT) {
+                readGeometry();
+            } else if (name.equals("properties") && token == JsonTokenReader.Token.BEGIN_OBJECT) {
+                readProperties();
+            } else {
+                mReader.skipValue();
+            }
+        }
+
+        mReader.endObject();
+        return true;
+    }
+
+    private void readGeometry() throws IOException {
+        mReader.beginObject();
+
+        while (mReader.hasNext()) {
+            String name = mReader.nextName();
+
+            if (name.equals("type"))
+                mGeometryType = mReader.nextString();
+            else if (name.equals("coordinates"))
+                readCoordinates();
+            else
+                mReader.skipValue();
+        }
+
+        mReader.endObject();
+    }
+
+    /**
+     * @return nesting of the array: 0 for position, 1 for line or ring, 2 for polygon or multiline
+     */
+    private int readCoordinates() throws IOException {
+        mReader.beginArray();
+
+        if (mReader.peek() == JsonTokenReader.Token.NUMBER) {
+            if (mPointCount * 2 == mCoordinates.length)
+                mCoordinates = Arrays.copyOf(mCoordinates, mCoordinates.length * 2);
+
+            mCoordinates[mPointCount * 2] = mReader.nextDouble();
+            mCoordinates[mPointCount * 2 + 1] = mReader.nextDouble();
+            mPointCount++;
+
+            // altitude is dropped
+            while (mReader.hasNext())
+                mReader.skipValue();
+
+            mReader.endArray();
+            return 0;
+        }
+
+        int depth = 0;
+        while (mReader.hasNext())
+            depth = readCoordinates();
+
+        mReader.endArray();
+
+        if (depth == 0) {
+            if (mPartCount == mPartEnds.length)
+                mPartEnds = Arrays.copyOf(mPartEnds, mPartCount * 2);
+
+            mPartEnds[mPartCount++] = mPointCount;
+        } else if (depth == 1) {
+            if (mPolygonCount == mPolygonEnds.length)
+                mPolygonEnds = Arrays.copyOf(mPolygonEnds, mPolygonCount * 2);
+
+            mPolygonEnds[mPolygonCount++] = mPartCount;
+        }
+
+        return depth + 1;
+    }
+
+    private void readProperties() throws IOException {
+        mReader.beginObject();
+
+        while (mReader.hasNext()) {
+            String name = mReader.nextName();
+            Object value;
+
+            switch (mReader.peek()) {
+                case STRING:
+                    value = mReader.nextString();
+                    break;
+                case NUMBER:
+                    String literal = mReader.nextString();
+
+                    if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0) {
+                        try {
+                            value = Long.parseLong(literal);
+                            break;
+                        } catch (NumberFormatException ignored) {
+                        }
+                    }
+
+                    value = Double.parseDouble(literal);
+                    break;
+                case BOOLEAN:
+                    value = mReader.nextBoolean();
+                    break;
+                default:
+                    mReader.skipValue();
+                    value = null;
+            }
+
+            mPropertyNames.add(name);
+            mPropertyValues.add(value);
+        }
+
+        mReader.endObject();
+    }
+}
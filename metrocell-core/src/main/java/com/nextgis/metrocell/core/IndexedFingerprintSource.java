@@ -0,0 +1,69 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.List;
+
+/**
+ * Answers segments intersection from {@link FingerprintIndex}, everything else goes to the wrapped source.
+ */
+public class IndexedFingerprintSource implements FingerprintSource, SegmentResolver {
+    private FingerprintIndex mIndex;
+    private FingerprintSource mSource;
+
+    public IndexedFingerprintSource(FingerprintIndex index, FingerprintSource source) {
+        mIndex = index;
+        mSource = source;
+    }
+
+    public FingerprintIndex getIndex() {
+        return mIndex;
+    }
+
+    @Override
+    public List<Segment> getSegments(List<? extends CellObservation> cells) {
+        return mIndex.getSegments(cells);
+    }
+
+    @Override
+    public RatioInterval getRatioInterval(Segment segment, List<? extends CellObservation> cells, int powerDelta) {
+        return mSource.getRatioInterval(segment, cells, powerDelta);
+    }
+
+    @Override
+    public void getPoints(Segment segment, List<? extends CellObservation> cells, int powerDelta, RatioInterval interval, List<LogPoint> result) {
+        mSource.getPoints(segment, cells, powerDelta, interval, result);
+    }
+
+    @Override
+    public boolean resolve(List<Segment> segments, List<? extends CellObservation> cells, int powerDelta, List<LogPoint> result) {
+        if (mSource instanceof SegmentResolver)
+            return ((SegmentResolver) mSource).resolve(segments, cells, powerDelta, result);
+
+        return Locator.resolve(mSource, segments, cells, powerDelta, result);
+    }
+
+    @Override
+    public void getCellPoints(CellObservation cell, List<LogPoint> result) {
+        mSource.getCellPoints(cell, result);
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Pull tokenizer over a character stream, keeps only the current token and nesting scopes in memory.
+ * Separators are not validated: commas and colons are skipped as whitespace.
+ */
+public class JsonTokenReader implements Closeable {
+    public enum Token {BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT}
+
+    private final Reader mReader;
+    private final char[] mBuffer = new char[8192];
+    private int mPosition, mLimit;
+    private long mOffset;
+
+    private final StringBuilder mLiteral = new StringBuilder();
+    // per scope: is object, expects name
+    private boolean[] mObjects = new boolean[32], mExpectNames = new boolean[32];
+    private int mDepth;
+
+    public JsonTokenReader(Reader reader) {
+        mReader = reader;
+    }
+
+    public Token peek() throws IOException {
+        int c = skipWhitespace();
+
+        switch (c) {
+            case -1:
+                return Token.END_DOCUMENT;
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '}':
+                return Token.END_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case ']':
+                return Token.END_ARRAY;
+            case '"':
+                return mDepth > 0 && mObjects[mDepth - 1] && mExpectNames[mDepth - 1] ? Token.NAME : Token.STRING;
+            case 't':
+            case 'f':
+                return Token.BOOLEAN;
+            case 'n':
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9'))
+                    return Token.NUMBER;
+
+                throw error("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect('{');
+        push(true);
+    }
+
+    public void endObject() throws IOException {
+        expect('}');
+        mDepth--;
+        afterValue();
+    }
+
+    public void beginArray() throws IOException {
+        expect('[');
+        push(false);
+    }
+
+    public void endArray() throws IOException {
+        expect(']');
+        mDepth--;
+        afterValue();
+    }
+
+    public String nextName() throws IOException {
+        if (peek() != Token.NAME)
+            throw error("Expected name");
+
+        String name = readString();
+        mExpectNames[mDepth - 1] = false;
+        return name;
+    }
+
+    /**
+     * @return string value or literal of a number
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        String value;
+
+        if (token == Token.STRING)
+            value = readString();
+        else if (token == Token.NUMBER)
+            value = readLiteral();
+        else
+            throw error("Expected string");
+
+        afterValue();
+        return value;
+    }
+
+    public double nextDouble() throws IOException {
+        Token token = peek();
+        if (token != Token.NUMBER && token != Token.STRING)
+            throw error("Expected number");
+
+        String value = token == Token.NUMBER ? readLiteral() : readString();
+        afterValue();
+
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw error("Malformed number " + value);
+        }
+    }
+
+    public long nextLong() throws IOException {
+        double value = nextDouble();
+        if (value != (long) value)
+            throw error("Expected integer " + value);
+
+        return (long) value;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        if (peek() != Token.BOOLEAN)
+            throw error("Expected boolean");
+
+        boolean value = readLiteral().equals("true");
+        afterValue();
+        return value;
+    }
+
+    public void nextNull() throws IOException {
+        if (peek() != Token.NULL)
+            throw error("Expected null");
+
+        readLiteral();
+        afterValue();
+    }
+
+    /**
+     * Skips the next value with all its nested values.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case STRING:
+                    readString();
+                    afterValue();
+                    break;
+                case END_DOCUMENT:
+                    throw error("Unexpected end of document");
+                default:
+                    readLiteral();
+                    afterValue();
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    private void push(boolean object) {
+        if (mDepth == mObjects.length) {
+            mObjects = Arrays.copyOf(mObjects, mDepth * 2);
+            mExpectNames = Arrays.copyOf(mExpectNames, mDepth * 2);
+        }
+
+        mObjects[mDepth] = object;
+        mExpectNames[mDepth] = object;
+        mDepth++;
+    }
+
+    private void afterValue() {
+        if (mDepth > 0 && mObjects[mDepth - 1])
+            mExpectNames[mDepth - 1] = true;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (skipWhitespace() != expected)
+            throw error("Expected '" + expected + "'");
+
+        mPosition++;
+    }
+
+    private int skipWhitespace() throws IOException {
+        while (mPosition < mLimit || fill()) {
+            char c = mBuffer[mPosition];
+
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != ',' && c != ':' && c != '\ufeff')
+                return c;
+
+            mPosition++;
+        }
+
+        return -1;
+    }
+
+    private boolean fill() throws IOException {
+        mOffset += mLimit;
+        mPosition = 0;
+        mLimit = Math.max(0, mReader.read(mBuffer));
+        return mLimit > 0;
+    }
+
+    /**
+     * Reads unquoted number, boolean or null.
+     */
+    private String readLiteral() throws IOException {
+        mLiteral.setLength(0);
+
+        while (mPosition < mLimit || fill()) {
+            char c = mBuffer[mPosition];
+
+            if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'z') && c != '-' && c != '+' && c != '.' && c != 'E')
+                break;
+
+            mLiteral.append(c);
+            mPosition++;
+        }
+
+        return mLiteral.toString();
+    }
+
+    private String readString() throws IOException {
+        mPosition++;
+        mLiteral.setLength(0);
+
+        while (mPosition < mLimit || fill()) {
+            char c = mBuffer[mPosition++];
+
+            if (c == '"')
+                return mLiteral.toString();
+
+            if (c == '\\')
+                c = readEscape();
+
+            mLiteral.append(c);
+        }
+
+        throw error("Unterminated string");
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int code = 0;
+
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0)
+                        throw error("Malformed unicode escape");
+
+                    code = code * 16 + digit;
+                }
+
+                return (char) code;
+            case -1:
+                throw error("Unterminated escape");
+            default:
+                return (char) c;
+        }
+    }
+
+    private int read() throws IOException {
+        return mPosition < mLimit || fill() ? mBuffer[mPosition++] : -1;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at " + (mOffset + mPosition));
+    }
+}
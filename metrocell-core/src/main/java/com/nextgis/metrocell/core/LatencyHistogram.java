@@ -0,0 +1,102 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring buffer of the last durations with percentiles over them. Recording takes two atomic
+ * increments and one store, no locks; a snapshot taken while some thread records may miss
+ * or repeat one sample, which is fine for percentiles.
+ */
+public class LatencyHistogram {
+    private final AtomicLongArray mSamples;
+    private final AtomicLong mCount = new AtomicLong(), mTotal = new AtomicLong();
+    private final int mMask;
+
+    /**
+     * @param capacity number of kept samples, rounded up to a power of two
+     */
+    public LatencyHistogram(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mSamples = new AtomicLongArray(size);
+        mMask = size - 1;
+    }
+
+    public void record(long nanos) {
+        long index = mCount.getAndIncrement();
+        mSamples.set((int) (index & mMask), nanos);
+        mTotal.addAndGet(nanos);
+    }
+
+    /**
+     * @return number of durations recorded since creation or reset
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getTotal() {
+        return mTotal.get();
+    }
+
+    public int getCapacity() {
+        return mSamples.length();
+    }
+
+    /**
+     * Copies kept samples sorted ascending.
+     *
+     * @param result at least {@link #getCapacity()} long
+     * @return number of samples copied
+     */
+    public int getSortedSamples(long[] result) {
+        int count = (int) Math.min(mCount.get(), mSamples.length());
+
+        for (int i = 0; i < count; i++)
+            result[i] = mSamples.get(i);
+
+        Arrays.sort(result, 0, count);
+        return count;
+    }
+
+    /**
+     * Nearest-rank percentile of sorted samples.
+     *
+     * @param percentile from 0 to 100
+     * @return 0 if there are no samples
+     */
+    public static long getPercentile(long[] sorted, int count, double percentile) {
+        if (count == 0)
+            return 0;
+
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.min(count, Math.max(1, rank)) - 1];
+    }
+
+    public void reset() {
+        mCount.set(0);
+        mTotal.set(0);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker simplification of (x, y) pairs with an explicit stack instead of recursion.
+ */
+public final class LineSimplifier {
+    private LineSimplifier() {
+    }
+
+    /**
+     * Marks points from..to which stay within tolerance of the simplified line, ends are always kept.
+     *
+     * @param keep indexed by point, at least to long
+     * @return number of kept points
+     */
+    public static int simplify(double[] coordinates, int from, int to, double tolerance, boolean[] keep) {
+        int count = to - from;
+        if (count <= 2) {
+            for (int i = from; i < to; i++)
+                keep[i] = true;
+
+            return count;
+        }
+
+        for (int i = from; i < to; i++)
+            keep[i] = false;
+
+        keep[from] = keep[to - 1] = true;
+        int kept = 2;
+        double squaredTolerance = tolerance * tolerance;
+
+        int[] stack = new int[2 * 64];
+        int top = 0;
+        stack[top++] = from;
+        stack[top++] = to - 1;
+
+        while (top > 0) {
+            int last = stack[--top], first = stack[--top];
+            double maxDistance = squaredTolerance;
+            int farthest = -1;
+
+            for (int i = first + 1; i < last; i++) {
+                double distance = getSquaredDistance(coordinates, i, first, last);
+
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+
+            if (farthest < 0)
+                continue;
+
+            keep[farthest] = true;
+            kept++;
+
+            if (top + 4 > stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+
+            stack[top++] = first;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = last;
+        }
+
+        return kept;
+    }
+
+    /**
+     * @return squared distance from point to segment between first and last points
+     */
+    static double getSquaredDistance(double[] coordinates, int point, int first, int last) {
+        double x = coordinates[first * 2], y = coordinates[first * 2 + 1];
+        double dx = coordinates[last * 2] - x, dy = coordinates[last * 2 + 1] - y;
+        double px = coordinates[point * 2] - x, py = coordinates[point * 2 + 1] - y;
+        double length = dx * dx + dy * dy;
+
+        if (length > 0) {
+            double t = Math.max(0, Math.min(1, (px * dx + py * dy) / length));
+            px -= t * dx;
+            py -= t * dy;
+        }
+
+        return px * px + py * py;
+    }
+}
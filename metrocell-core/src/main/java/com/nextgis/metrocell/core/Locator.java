@@ -0,0 +1,210 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Positioning pipeline: picks cells to search by, intersects their segments and resolves
+ * position on every segment. If that gives nothing, takes best ranked states when ranker is set,
+ * then falls back to the active cell rows.
+ */
+public class Locator {
+    private FingerprintSource mSource;
+    private int mPowerDelta;
+    private SegmentRanker mRanker;
+    private int[] mRankedStates;
+    private float[] mRankedScores;
+    private MetroTopology mTopology;
+    private Segment mLastSegment;
+    private int mMaxHops;
+    private PipelineMetrics mMetrics;
+
+    public Locator(FingerprintSource source, int powerDelta) {
+        mSource = source;
+        mPowerDelta = powerDelta;
+    }
+
+    /**
+     * Ranks states when no segment has every cell within its power range.
+     *
+     * @param k how many best states become points
+     */
+    public void setRanker(SegmentRanker ranker, int k) {
+        mRanker = ranker;
+        mRankedStates = new int[k];
+        mRankedScores = new float[k];
+    }
+
+    /**
+     * Keeps matched segments within maxHops of last fix segment, unless none of them is that close.
+     */
+    public void setNeighborhood(MetroTopology topology, Segment last, int maxHops) {
+        mTopology = topology;
+        mLastSegment = last;
+        mMaxHops = maxHops;
+    }
+
+    /**
+     * Times segments intersection and resolving.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public LocatorResult locate(List<? extends CellObservation> cells, boolean useInvalid) {
+        LocatorResult result = new LocatorResult();
+        selectCells(cells, useInvalid, result);
+
+        CellObservation activeCell = result.getActiveCell();
+        if (activeCell == null || activeCell.getLac() == CellObservation.UNDEFINED || activeCell.getCid() == CellObservation.UNDEFINED) {
+            result.setStatus(LocatorResult.Status.NO_ACTIVE_CELL);
+            return result;
+        }
+
+        long start = PipelineMetrics.start();
+        result.getSegments().addAll(prune(match(result.getCells())));
+
+        if (mMetrics != null) {
+            start = mMetrics.stop(PipelineMetrics.STAGE_INTERSECT, start);
+            mMetrics.count(PipelineMetrics.COUNT_SEGMENTS, result.getSegments().size());
+        }
+
+        if (!result.getSegments().isEmpty()) {
+            boolean resolved = resolve(result.getSegments(), cells, result.getPoints());
+
+            if (mMetrics != null) {
+                mMetrics.stop(PipelineMetrics.STAGE_RESOLVE, start);
+                mMetrics.count(PipelineMetrics.COUNT_ROWS, result.getPoints().size());
+            }
+
+            if (!resolved) {
+                result.getPoints().clear();
+
+                if (!rank(result))
+                    result.setStatus(LocatorResult.Status.NO_POWER_MATCH);
+
+                return result;
+            }
+
+            if (!result.getPoints().isEmpty())
+                result.setStatus(LocatorResult.Status.FOUND_SEGMENTS);
+        }
+
+        if (result.getPoints().isEmpty())
+            rank(result);
+
+        // no intersections?, get active bts lat/lon only
+        if (result.getPoints().isEmpty()) {
+            mSource.getCellPoints(activeCell, result.getPoints());
+
+            if (!result.getPoints().isEmpty())
+                result.setStatus(LocatorResult.Status.FOUND_ACTIVE_CELL);
+        }
+
+        return result;
+    }
+
+    /**
+     * Skips invalid cells unless useInvalid is set; in that case search stops at the first invalid one.
+     */
+    public void selectCells(List<? extends CellObservation> cells, boolean useInvalid, LocatorResult result) {
+        boolean invalid = false;
+
+        for (CellObservation cell : cells) {
+            if (invalid || (cell.isInvalid() && !useInvalid))
+                continue;
+
+            result.getCells().add(cell);
+
+            if (cell.isActive())
+                result.setActiveCell(cell);
+
+            if (cell.isInvalid())
+                invalid = true;
+        }
+    }
+
+    /**
+     * Adds centers of best ranked states, best first.
+     *
+     * @return false if there is no ranker or no state has any of the cells
+     */
+    public boolean rank(LocatorResult result) {
+        if (mRanker == null)
+            return false;
+
+        int count = mRanker.rank(result.getCells(), mRankedStates.length, mRankedStates, mRankedScores);
+
+        for (int i = 0; i < count; i++) {
+            int state = mRankedStates[i];
+            Segment segment = mRanker.getSegment(state);
+            result.getPoints().add(new LogPoint(segment.getBeginSeg(), segment.getEndSeg(), mRanker.getRatio(state), CellObservation.UNDEFINED,
+                    CellObservation.UNDEFINED, CellObservation.UNDEFINED, CellObservation.UNDEFINED, mRanker.getX(state), mRanker.getY(state)));
+        }
+
+        if (count > 0)
+            result.setStatus(LocatorResult.Status.FOUND_RANKED);
+
+        return count > 0;
+    }
+
+    public List<Segment> match(List<? extends CellObservation> cells) {
+        return mSource.getSegments(cells);
+    }
+
+    public List<Segment> prune(List<Segment> segments) {
+        if (mTopology == null || mLastSegment == null || segments.size() < 2)
+            return segments;
+
+        List<Segment> near = new ArrayList<>();
+        return mTopology.prune(segments, mLastSegment, mMaxHops, near) > 0 ? near : segments;
+    }
+
+    /**
+     * @return false if some segment has no rows within cells power range
+     */
+    public boolean resolve(List<Segment> segments, List<? extends CellObservation> cells, List<LogPoint> result) {
+        if (mSource instanceof SegmentResolver)
+            return ((SegmentResolver) mSource).resolve(segments, cells, mPowerDelta, result);
+
+        return resolve(mSource, segments, cells, mPowerDelta, result);
+    }
+
+    /**
+     * Resolves segments one by one with two source queries each.
+     */
+    public static boolean resolve(FingerprintSource source, List<Segment> segments, List<? extends CellObservation> cells,
+                                  int powerDelta, List<LogPoint> result) {
+        for (Segment segment : segments) {
+            RatioInterval interval = source.getRatioInterval(segment, cells, powerDelta);
+
+            if (interval == null)
+                return false;
+
+            source.getPoints(segment, cells, powerDelta, interval, result);
+        }
+
+        return true;
+    }
+}
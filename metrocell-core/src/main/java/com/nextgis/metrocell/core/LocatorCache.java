@@ -0,0 +1,149 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recent locator results keyed by fingerprint: every cell as locator reads it, that is lac, cid,
+ * power range, RSSI and active flag, in input order since cells selection depends on it.
+ * Entries live for a limited time, least recently used ones are evicted above the size bound.
+ */
+public class LocatorCache {
+    private final long mTimeToLive;
+    private final LinkedHashMap<Key, CachedResult> mEntries;
+    private int mHits, mMisses;
+
+    /**
+     * @param timeToLive in timestamp units of scans
+     */
+    public LocatorCache(final int maxSize, long timeToLive) {
+        mTimeToLive = timeToLive;
+        mEntries = new LinkedHashMap<Key, CachedResult>(maxSize * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param context anything else the result depends on, e.g. packed last fix segment
+     */
+    public Key getKey(List<? extends CellObservation> cells, boolean useInvalid, long context) {
+        long[] values = new long[cells.size() * 3];
+
+        for (int i = 0; i < cells.size(); i++) {
+            CellObservation cell = cells.get(i);
+            values[i * 3] = CellKey.pack(cell);
+            values[i * 3 + 1] = CellKey.pack(cell.getMinPower(), cell.getMaxPower());
+            values[i * 3 + 2] = (long) cell.getRssi() << 1 | (cell.isActive() ? 1 : 0);
+        }
+
+        return new Key(values, useInvalid, context);
+    }
+
+    /**
+     * @return null if there is no result for the fingerprint or it has expired
+     */
+    public synchronized LocatorResult get(Key key, long timeStamp) {
+        CachedResult entry = mEntries.get(key);
+
+        if (entry != null && timeStamp - entry.mTimeStamp > mTimeToLive) {
+            mEntries.remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            mMisses++;
+            return null;
+        }
+
+        mHits++;
+        return entry.mResult;
+    }
+
+    public synchronized void put(Key key, LocatorResult result, long timeStamp) {
+        mEntries.put(key, new CachedResult(result, timeStamp));
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    public static class Key {
+        private final long[] mValues;
+        private final boolean mUseInvalid;
+        private final long mContext;
+        private final int mHash;
+
+        Key(long[] values, boolean useInvalid, long context) {
+            mValues = values;
+            mUseInvalid = useInvalid;
+            mContext = context;
+            mHash = 31 * (31 * Arrays.hashCode(values) + (int) (context ^ context >>> 32)) + (useInvalid ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key) o;
+            return mHash == key.mHash && mUseInvalid == key.mUseInvalid && mContext == key.mContext
+                    && Arrays.equals(mValues, key.mValues);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+
+    private static class CachedResult {
+        final LocatorResult mResult;
+        final long mTimeStamp;
+
+        CachedResult(LocatorResult result, long timeStamp) {
+            mResult = result;
+            mTimeStamp = timeStamp;
+        }
+    }
+}
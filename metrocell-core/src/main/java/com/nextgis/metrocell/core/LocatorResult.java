@@ -0,0 +1,70 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LocatorResult {
+    public enum Status {NO_ACTIVE_CELL, NO_POWER_MATCH, FOUND_SEGMENTS, FOUND_RANKED, FOUND_ACTIVE_CELL, NOT_FOUND}
+
+    private Status mStatus = Status.NOT_FOUND;
+    private CellObservation mActiveCell;
+    private List<CellObservation> mCells = new ArrayList<>();
+    private List<Segment> mSegments = new ArrayList<>();
+    private List<LogPoint> mPoints = new ArrayList<>();
+
+    public boolean isFound() {
+        return mStatus == Status.FOUND_SEGMENTS || mStatus == Status.FOUND_RANKED || mStatus == Status.FOUND_ACTIVE_CELL;
+    }
+
+    public Status getStatus() {
+        return mStatus;
+    }
+
+    void setStatus(Status status) {
+        mStatus = status;
+    }
+
+    public CellObservation getActiveCell() {
+        return mActiveCell;
+    }
+
+    void setActiveCell(CellObservation activeCell) {
+        mActiveCell = activeCell;
+    }
+
+    /**
+     * Cells used for segments intersection.
+     */
+    public List<CellObservation> getCells() {
+        return mCells;
+    }
+
+    public List<Segment> getSegments() {
+        return mSegments;
+    }
+
+    public List<LogPoint> getPoints() {
+        return mPoints;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+/**
+ * One surveyed row of log_points.
+ */
+public class LogPoint {
+    private int mSegBegin, mSegEnd;
+    private double mRatio;
+    private int mLac, mCid, mPsc, mPower;
+    private double mX, mY;
+
+    public LogPoint(int segBegin, int segEnd, double ratio, int lac, int cid, int psc, int power, double x, double y) {
+        mSegBegin = segBegin;
+        mSegEnd = segEnd;
+        mRatio = ratio;
+        mLac = lac;
+        mCid = cid;
+        mPsc = psc;
+        mPower = power;
+        mX = x;
+        mY = y;
+    }
+
+    public int getSegBegin() {
+        return mSegBegin;
+    }
+
+    public int getSegEnd() {
+        return mSegEnd;
+    }
+
+    public double getRatio() {
+        return mRatio;
+    }
+
+    public int getLac() {
+        return mLac;
+    }
+
+    public int getCid() {
+        return mCid;
+    }
+
+    public int getPsc() {
+        return mPsc;
+    }
+
+    public int getPower() {
+        return mPower;
+    }
+
+    public double getX() {
+        return mX;
+    }
+
+    public double getY() {
+        return mY;
+    }
+}
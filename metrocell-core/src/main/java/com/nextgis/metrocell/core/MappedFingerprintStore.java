@@ -0,0 +1,295 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only fingerprints in a column-wise binary file written by {@link FingerprintStoreWriter}.
+ * Rows are sorted by (cell key, segment, power), so every lookup is a few binary searches
+ * over the mapped file and the OS pages columns in only when they are touched.
+ */
+public class MappedFingerprintStore implements FingerprintSource {
+    final static int MAGIC = 0x4D434650;    // MCFP
+    // 2: unknown ration is NaN instead of 0
+    final static int VERSION = 2;
+    final static int HEADER_SIZE = 16;
+
+    private int mCount;
+    private LongBuffer mKeys;       // packed lac, cid
+    private LongBuffer mSegments;   // packed seg_begin, seg_end
+    private IntBuffer mPowers;
+    private DoubleBuffer mRatios;
+    private IntBuffer mPscs;
+    private DoubleBuffer mXs, mYs;
+
+    public MappedFingerprintStore(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+
+        try {
+            FileChannel channel = raf.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported fingerprint store " + file.getName());
+
+        mCount = buffer.getInt(8);
+        int offset = HEADER_SIZE;
+        mKeys = column(buffer, offset, 8).asLongBuffer();
+        offset += mCount * 8;
+        mSegments = column(buffer, offset, 8).asLongBuffer();
+        offset += mCount * 8;
+        mPowers = column(buffer, offset, 4).asIntBuffer();
+        offset += mCount * 4;
+        mPscs = column(buffer, offset, 4).asIntBuffer();
+        offset += mCount * 4;
+        mRatios = column(buffer, offset, 8).asDoubleBuffer();
+        offset += mCount * 8;
+        mXs = column(buffer, offset, 8).asDoubleBuffer();
+        offset += mCount * 8;
+        mYs = column(buffer, offset, 8).asDoubleBuffer();
+    }
+
+    private ByteBuffer column(ByteBuffer buffer, int offset, int size) {
+        ByteBuffer column = buffer.duplicate();
+        column.position(offset);
+        column.limit(offset + mCount * size);
+        return column.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public List<Segment> getSegments(List<? extends CellObservation> cells) {
+        List<Segment> result = new ArrayList<>();
+
+        if (cells.isEmpty())
+            return result;
+
+        // walk segments of the rarest cell and look each one up in the other cells
+        int rarest = -1, from = 0, to = 0;
+        for (int i = 0; i < cells.size(); i++) {
+            long key = CellKey.pack(cells.get(i));
+            int low = lowerBound(mKeys, 0, mCount, key), high = upperBound(mKeys, low, mCount, key);
+
+            if (low == high)
+                return result;
+
+            if (rarest == -1 || high - low < to - from) {
+                rarest = i;
+                from = low;
+                to = high;
+            }
+        }
+
+        for (int row = from; row < to; ) {
+            long segment = mSegments.get(row);
+            boolean found = true;
+
+            for (int i = 0; i < cells.size() && found; i++)
+                if (i != rarest)
+                    found = hasRows(CellKey.pack(cells.get(i)), segment);
+
+            if (found)
+                result.add(new Segment(CellKey.getLac(segment), CellKey.getCid(segment)));
+
+            row = upperBound(mSegments, row, to, segment);
+        }
+
+        return result;
+    }
+
+    @Override
+    public RatioInterval getRatioInterval(Segment segment, List<? extends CellObservation> cells, int powerDelta) {
+        long seg = CellKey.pack(segment.getBeginSeg(), segment.getEndSeg());
+        boolean found = false;
+        double mins = -Double.MAX_VALUE, maxs = Double.MAX_VALUE;
+
+        for (CellObservation cell : cells) {
+            long range = getPowerRange(CellKey.pack(cell), seg, cell.getMinPower() - powerDelta, cell.getMaxPower() + powerDelta);
+            int from = (int) (range >> 32), to = (int) range;
+
+            if (from == to)
+                continue;
+
+            // rows without ration are skipped like nulls in SQL min/max
+            boolean cellFound = false;
+            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (int row = from; row < to; row++) {
+                double ratio = mRatios.get(row);
+
+                if (Double.isNaN(ratio))
+                    continue;
+
+                cellFound = true;
+                min = Math.min(min, ratio);
+                max = Math.max(max, ratio);
+            }
+
+            if (!cellFound)
+                continue;
+
+            found = true;
+            mins = Math.max(mins, min);
+            maxs = Math.min(maxs, max);
+        }
+
+        return found ? new RatioInterval(mins, maxs) : null;
+    }
+
+    @Override
+    public void getPoints(Segment segment, List<? extends CellObservation> cells, int powerDelta, RatioInterval interval, List<LogPoint> result) {
+        long seg = CellKey.pack(segment.getBeginSeg(), segment.getEndSeg());
+
+        for (int i = 0; i < cells.size(); i++) {
+            CellObservation cell = cells.get(i);
+            long key = CellKey.pack(cell);
+            long range = getPowerRange(key, seg, cell.getMinPower() - powerDelta, cell.getMaxPower() + powerDelta);
+
+            for (int row = (int) (range >> 32); row < (int) range; row++)
+                if (!Double.isNaN(mRatios.get(row)) && interval.contains(mRatios.get(row))
+                        && !isHeardBefore(cells, i, key, mPowers.get(row), powerDelta))
+                    result.add(getRow(row));
+        }
+    }
+
+    @Override
+    public void getCellPoints(CellObservation cell, List<LogPoint> result) {
+        long key = CellKey.pack(cell);
+        int from = lowerBound(mKeys, 0, mCount, key), to = upperBound(mKeys, from, mCount, key);
+
+        for (int row = from; row < to; row++) {
+            int power = mPowers.get(row);
+
+            if (power >= cell.getMinPower() && power <= cell.getMaxPower())
+                result.add(getRow(row));
+        }
+    }
+
+    public LogPoint getRow(int row) {
+        long key = mKeys.get(row), seg = mSegments.get(row);
+        return new LogPoint(CellKey.getLac(seg), CellKey.getCid(seg), mRatios.get(row), CellKey.getLac(key), CellKey.getCid(key),
+                mPscs.get(row), mPowers.get(row), mXs.get(row), mYs.get(row));
+    }
+
+    private boolean hasRows(long key, long seg) {
+        int from = lowerBound(mKeys, 0, mCount, key), to = upperBound(mKeys, from, mCount, key);
+        int row = lowerBound(mSegments, from, to, seg);
+        return row < to && mSegments.get(row) == seg;
+    }
+
+    /**
+     * @return rows of the cell on the segment with power in [min, max], packed as from << 32 | to
+     */
+    private long getPowerRange(long key, long seg, int min, int max) {
+        int from = lowerBound(mKeys, 0, mCount, key), to = upperBound(mKeys, from, mCount, key);
+        from = lowerBound(mSegments, from, to, seg);
+        to = upperBound(mSegments, from, to, seg);
+        from = lowerBound(mPowers, from, to, min);
+        to = upperBound(mPowers, from, to, max);
+        return ((long) from << 32) | to;
+    }
+
+    /**
+     * @return true if the row was already added for a repeated cell with another power range
+     */
+    private static boolean isHeardBefore(List<? extends CellObservation> cells, int index, long key, int power, int powerDelta) {
+        for (int i = 0; i < index; i++) {
+            CellObservation cell = cells.get(i);
+
+            if (CellKey.pack(cell) == key && power >= cell.getMinPower() - powerDelta && power <= cell.getMaxPower() + powerDelta)
+                return true;
+        }
+
+        return false;
+    }
+
+    private static int lowerBound(LongBuffer column, int from, int to, long value) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+
+            if (column.get(mid) < value)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+
+        return from;
+    }
+
+    private static int upperBound(LongBuffer column, int from, int to, long value) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+
+            if (column.get(mid) <= value)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+
+        return from;
+    }
+
+    private static int lowerBound(IntBuffer column, int from, int to, int value) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+
+            if (column.get(mid) < value)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+
+        return from;
+    }
+
+    private static int upperBound(IntBuffer column, int from, int to, int value) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+
+            if (column.get(mid) <= value)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+
+        return from;
+    }
+}
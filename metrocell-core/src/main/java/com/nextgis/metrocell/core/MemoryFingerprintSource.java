@@ -0,0 +1,119 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fingerprints held in memory and searched by plain scans, the same way SQLite does it
+ * without indices. Used as a reference and for off-device benchmarks.
+ */
+public class MemoryFingerprintSource implements FingerprintSource {
+    private List<LogPoint> mRows;
+
+    public MemoryFingerprintSource(List<LogPoint> rows) {
+        mRows = rows;
+    }
+
+    public List<LogPoint> getRows() {
+        return mRows;
+    }
+
+    @Override
+    public List<Segment> getSegments(List<? extends CellObservation> cells) {
+        Set<Segment> result = null;
+
+        for (CellObservation cell : cells) {
+            Set<Segment> segments = new LinkedHashSet<>();
+
+            for (LogPoint row : mRows)
+                if (row.getLac() == cell.getLac() && row.getCid() == cell.getCid())
+                    segments.add(new Segment(row.getSegBegin(), row.getSegEnd()));
+
+            if (result == null)
+                result = segments;
+            else
+                result.retainAll(segments);
+        }
+
+        return result == null ? new ArrayList<Segment>() : new ArrayList<>(result);
+    }
+
+    @Override
+    public RatioInterval getRatioInterval(Segment segment, List<? extends CellObservation> cells, int powerDelta) {
+        boolean found = false;
+        double mins = -Double.MAX_VALUE, maxs = Double.MAX_VALUE;
+
+        for (CellObservation cell : cells) {
+            boolean cellFound = false;
+            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+
+            for (LogPoint row : mRows)
+                if (isOnSegment(row, segment) && isHeard(row, cell, powerDelta) && !Double.isNaN(row.getRatio())) {
+                    cellFound = true;
+                    min = Math.min(min, row.getRatio());
+                    max = Math.max(max, row.getRatio());
+                }
+
+            if (cellFound) {
+                found = true;
+                mins = Math.max(mins, min);
+                maxs = Math.min(maxs, max);
+            }
+        }
+
+        return found ? new RatioInterval(mins, maxs) : null;
+    }
+
+    @Override
+    public void getPoints(Segment segment, List<? extends CellObservation> cells, int powerDelta, RatioInterval interval, List<LogPoint> result) {
+        for (LogPoint row : mRows) {
+            if (!isOnSegment(row, segment) || !interval.contains(row.getRatio()))
+                continue;
+
+            for (CellObservation cell : cells)
+                if (isHeard(row, cell, powerDelta)) {
+                    result.add(row);
+                    break;
+                }
+        }
+    }
+
+    @Override
+    public void getCellPoints(CellObservation cell, List<LogPoint> result) {
+        for (LogPoint row : mRows)
+            if (isHeard(row, cell, 0))
+                result.add(row);
+    }
+
+    private static boolean isOnSegment(LogPoint row, Segment segment) {
+        return row.getSegBegin() == segment.getBeginSeg() && row.getSegEnd() == segment.getEndSeg();
+    }
+
+    private static boolean isHeard(LogPoint row, CellObservation cell, int powerDelta) {
+        return row.getLac() == cell.getLac() && row.getCid() == cell.getCid()
+                && row.getPower() >= cell.getMinPower() - powerDelta && row.getPower() <= cell.getMaxPower() + powerDelta;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read-only metro lines in a column-wise binary file written by {@link MetroLinesWriter}:
+ * envelopes, Web Mercator coordinates, point offsets, ARGB colors and UTF-8 names of lines.
+ * Nothing has to be parsed or projected, lines are ready to draw right after loading.
+ */
+public class MetroLinesStore {
+    public final static String FIELD_NAME = "name";
+    public final static String FIELD_COLOR = "color";
+
+    final static int MAGIC = 0x4D434C4E;    // MCLN
+    final static int VERSION = 1;
+    final static int HEADER_SIZE = 16;
+
+    private final int mCount, mPointCount;
+    private final DoubleBuffer mEnvelopes, mCoordinates;
+    private final IntBuffer mOffsets, mColors, mNameOffsets;
+    private final ByteBuffer mNames;
+
+    public MetroLinesStore(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported metro lines store");
+
+        mCount = buffer.getInt(8);
+        mPointCount = buffer.getInt(12);
+        int offset = HEADER_SIZE;
+        mEnvelopes = column(buffer, offset, mCount * 32).asDoubleBuffer();
+        offset += mCount * 32;
+        mCoordinates = column(buffer, offset, mPointCount * 16).asDoubleBuffer();
+        offset += mPointCount * 16;
+        mOffsets = column(buffer, offset, (mCount + 1) * 4).asIntBuffer();
+        offset += (mCount + 1) * 4;
+        mColors = column(buffer, offset, mCount * 4).asIntBuffer();
+        offset += mCount * 4;
+        mNameOffsets = column(buffer, offset, (mCount + 1) * 4).asIntBuffer();
+        offset += (mCount + 1) * 4;
+        mNames = column(buffer, offset, mNameOffsets.get(mCount));
+    }
+
+    public static MetroLinesStore map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+            return new MetroLinesStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Bulk-reads a stream which can't be mapped, e.g. a compressed asset.
+     */
+    public static MetroLinesStore read(InputStream input) throws IOException {
+        byte[] data = new byte[Math.max(input.available(), 64 * 1024)];
+        int size = 0, read;
+
+        while ((read = input.read(data, size, data.length - size)) >= 0) {
+            size += read;
+
+            if (size == data.length)
+                data = Arrays.copyOf(data, data.length * 2);
+        }
+
+        return new MetroLinesStore(ByteBuffer.wrap(data, 0, size).slice());
+    }
+
+    private static ByteBuffer column(ByteBuffer buffer, int offset, int size) throws IOException {
+        if (offset + size > buffer.limit())
+            throw new IOException("Truncated metro lines store");
+
+        ByteBuffer column = buffer.duplicate();
+        column.position(offset);
+        column.limit(offset + size);
+        return column.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getPointCount() {
+        return mPointCount;
+    }
+
+    /**
+     * @return index of the first point of the line
+     */
+    public int getBegin(int line) {
+        return mOffsets.get(line);
+    }
+
+    /**
+     * @return index of the point after the last one of the line
+     */
+    public int getEnd(int line) {
+        return mOffsets.get(line + 1);
+    }
+
+    public double getX(int point) {
+        return mCoordinates.get(point * 2);
+    }
+
+    public double getY(int point) {
+        return mCoordinates.get(point * 2 + 1);
+    }
+
+    /**
+     * Copies (x, y) pairs of the line.
+     *
+     * @return number of points copied
+     */
+    public int getCoordinates(int line, double[] result) {
+        int begin = getBegin(line), count = Math.min(getEnd(line) - begin, result.length / 2);
+        DoubleBuffer coordinates = mCoordinates.duplicate();
+        coordinates.position(begin * 2);
+        coordinates.get(result, 0, count * 2);
+        return count;
+    }
+
+    public double getMinX(int line) {
+        return mEnvelopes.get(line * 4);
+    }
+
+    public double getMinY(int line) {
+        return mEnvelopes.get(line * 4 + 1);
+    }
+
+    public double getMaxX(int line) {
+        return mEnvelopes.get(line * 4 + 2);
+    }
+
+    public double getMaxY(int line) {
+        return mEnvelopes.get(line * 4 + 3);
+    }
+
+    /**
+     * @return ARGB, 0 if line has no color
+     */
+    public int getColor(int line) {
+        return mColors.get(line);
+    }
+
+    public String getName(int line) {
+        int begin = mNameOffsets.get(line);
+        byte[] name = new byte[mNameOffsets.get(line + 1) - begin];
+        ByteBuffer names = mNames.duplicate();
+        names.position(begin);
+        names.get(name);
+        return new String(name, MetroLinesWriter.UTF8);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects metro lines and writes them in {@link MetroLinesStore} format. Run as a program it
+ * compiles GeoJSON with line strings into the store: java MetroLinesWriter lines.geojson lines.bin
+ */
+public class MetroLinesWriter {
+    private final static int BUFFER_SIZE = 64 * 1024;
+    final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private double[] mCoordinates = new double[4096];
+    private int[] mOffsets = new int[257];
+    private int[] mColors = new int[256];
+    private final List<String> mNames = new ArrayList<>();
+    private int mCount, mPointCount;
+
+    /**
+     * @param coordinates Web Mercator (x, y) pairs
+     * @param color       ARGB, 0 for default
+     */
+    public MetroLinesWriter add(double[] coordinates, int from, int to, int color, String name) {
+        if (mCount == mColors.length) {
+            mColors = Arrays.copyOf(mColors, mColors.length * 2);
+            mOffsets = Arrays.copyOf(mOffsets, mColors.length + 1);
+        }
+
+        int size = (mPointCount + to - from) * 2;
+        if (size > mCoordinates.length)
+            mCoordinates = Arrays.copyOf(mCoordinates, Math.max(size, mCoordinates.length * 2));
+
+        System.arraycopy(coordinates, from * 2, mCoordinates, mPointCount * 2, (to - from) * 2);
+        mPointCount += to - from;
+        mColors[mCount] = color;
+        mNames.add(name == null ? "" : name);
+        mOffsets[++mCount] = mPointCount;
+        return this;
+    }
+
+    /**
+     * Adds every line and every part of multilines, projected to Web Mercator when collection is in WGS84.
+     */
+    public MetroLinesWriter addGeoJson(Reader reader) throws IOException {
+        GeoJsonReader features = new GeoJsonReader(reader);
+
+        try {
+            while (features.next()) {
+                String type = features.getGeometryType();
+                if (!"LineString".equals(type) && !"MultiLineString".equals(type))
+                    continue;
+
+                if (!features.isWgs84() && !features.getCrsName().endsWith("3857"))
+                    throw new IOException("Unsupported crs " + features.getCrsName());
+
+                if (features.isWgs84())
+                    WebMercator.project(features.getCoordinates(), 0, features.getPointCount());
+
+                int color = 0;
+                String name = null;
+                for (int i = 0; i < features.getPropertyCount(); i++) {
+                    Object value = features.getPropertyValue(i);
+
+                    if (features.getPropertyName(i).equals(MetroLinesStore.FIELD_COLOR) && value instanceof String)
+                        color = parseColor((String) value);
+                    else if (features.getPropertyName(i).equals(MetroLinesStore.FIELD_NAME) && value instanceof String)
+                        name = (String) value;
+                }
+
+                for (int part = 0; part < features.getPartCount(); part++)
+                    add(features.getCoordinates(), part == 0 ? 0 : features.getPartEnd(part - 1), features.getPartEnd(part), color, name);
+            }
+        } finally {
+            features.close();
+        }
+
+        return this;
+    }
+
+    public void write(File file) throws IOException {
+        byte[][] names = new byte[mCount][];
+        int nameSize = 0;
+        for (int i = 0; i < mCount; i++) {
+            names[i] = mNames.get(i).getBytes(UTF8);
+            nameSize += names[i].length;
+        }
+
+        FileOutputStream output = new FileOutputStream(file);
+        FileChannel channel = output.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            buffer.putInt(MetroLinesStore.MAGIC);
+            buffer.putInt(MetroLinesStore.VERSION);
+            buffer.putInt(mCount);
+            buffer.putInt(mPointCount);
+
+            // doubles go first to stay aligned
+            for (int i = 0; i < mCount; i++) {
+                double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+
+                for (int p = mOffsets[i]; p < mOffsets[i + 1]; p++) {
+                    minX = Math.min(minX, mCoordinates[p * 2]);
+                    minY = Math.min(minY, mCoordinates[p * 2 + 1]);
+                    maxX = Math.max(maxX, mCoordinates[p * 2]);
+                    maxY = Math.max(maxY, mCoordinates[p * 2 + 1]);
+                }
+
+                put(channel, buffer, 32).putDouble(minX).putDouble(minY).putDouble(maxX).putDouble(maxY);
+            }
+
+            for (int i = 0; i < mPointCount * 2; i++)
+                put(channel, buffer, 8).putDouble(mCoordinates[i]);
+            for (int i = 0; i <= mCount; i++)
+                put(channel, buffer, 4).putInt(mOffsets[i]);
+            for (int i = 0; i < mCount; i++)
+                put(channel, buffer, 4).putInt(mColors[i]);
+
+            int nameOffset = 0;
+            for (int i = 0; i < mCount; i++) {
+                put(channel, buffer, 4).putInt(nameOffset);
+                nameOffset += names[i].length;
+            }
+            put(channel, buffer, 4).putInt(nameSize);
+
+            for (int i = 0; i < mCount; i++)
+                for (byte b : names[i])
+                    put(channel, buffer, 1).put(b);
+
+            flush(channel, buffer);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * @return ARGB of #RRGGBB or #AARRGGBB, 0 if color is malformed
+     */
+    static int parseColor(String color) {
+        if (!color.startsWith("#") || (color.length() != 7 && color.length() != 9))
+            return 0;
+
+        try {
+            long value = Long.parseLong(color.substring(1), 16);
+            return (int) (color.length() == 7 ? value | 0xFF000000L : value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static ByteBuffer put(FileChannel channel, ByteBuffer buffer, int size) throws IOException {
+        if (buffer.remaining() < size)
+            flush(channel, buffer);
+
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+
+        buffer.clear();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: MetroLinesWriter <lines.geojson> <lines.bin>");
+            System.exit(1);
+        }
+
+        MetroLinesWriter writer = new MetroLinesWriter();
+        writer.addGeoJson(new InputStreamReader(new FileInputStream(args[0]), UTF8));
+        writer.write(new File(args[1]));
+        System.out.println(args[1] + ": " + writer.mCount + " lines, " + writer.mPointCount + " points");
+    }
+}
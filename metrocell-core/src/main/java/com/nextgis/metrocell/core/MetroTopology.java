@@ -0,0 +1,218 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Undirected metro graph: stations are seg_begin/seg_end ids of log_points, every segment links
+ * its two stations. Adjacency is kept in CSR layout, hop distances come from breadth-first search
+ * over preallocated arrays.
+ */
+public class MetroTopology {
+    private final int[] mStations;
+    private final int[] mOffsets, mNeighbors;
+    // scratch of breadth-first search
+    private final int[] mQueue, mDistances, mStamps;
+    private int mStamp;
+
+    MetroTopology(int[] stations, int[] offsets, int[] neighbors) {
+        mStations = stations;
+        mOffsets = offsets;
+        mNeighbors = neighbors;
+
+        mQueue = new int[stations.length];
+        mDistances = new int[stations.length];
+        mStamps = new int[stations.length];
+    }
+
+    public static MetroTopology fromSegments(List<Segment> segments) {
+        int[] stations = new int[segments.size() * 2];
+        for (int i = 0; i < segments.size(); i++) {
+            stations[i * 2] = segments.get(i).getBeginSeg();
+            stations[i * 2 + 1] = segments.get(i).getEndSeg();
+        }
+
+        Arrays.sort(stations);
+        int count = 0;
+        for (int i = 0; i < stations.length; i++)
+            if (count == 0 || stations[count - 1] != stations[i])
+                stations[count++] = stations[i];
+
+        stations = Arrays.copyOf(stations, count);
+
+        // both directions of every segment as (from, to) station indices
+        long[] edges = new long[segments.size() * 2];
+        int edgeCount = 0;
+
+        for (int i = 0; i < segments.size(); i++) {
+            int from = Arrays.binarySearch(stations, segments.get(i).getBeginSeg());
+            int to = Arrays.binarySearch(stations, segments.get(i).getEndSeg());
+
+            if (from != to) {
+                edges[edgeCount++] = CellKey.pack(from, to);
+                edges[edgeCount++] = CellKey.pack(to, from);
+            }
+        }
+
+        Arrays.sort(edges, 0, edgeCount);
+        int[] offsets = new int[count + 1];
+        int[] neighbors = new int[edgeCount];
+        int neighborCount = 0;
+
+        for (int i = 0; i < edgeCount; i++) {
+            if (i > 0 && edges[i] == edges[i - 1])
+                continue;
+
+            offsets[CellKey.getLac(edges[i]) + 1]++;
+            neighbors[neighborCount++] = CellKey.getCid(edges[i]);
+        }
+
+        for (int i = 0; i < count; i++)
+            offsets[i + 1] += offsets[i];
+
+        return new MetroTopology(stations, offsets, Arrays.copyOf(neighbors, neighborCount));
+    }
+
+    public int getStationCount() {
+        return mStations.length;
+    }
+
+    public int getEdgeCount() {
+        return mNeighbors.length / 2;
+    }
+
+    /**
+     * Writes ids of stations one segment away.
+     *
+     * @return number of neighbors, -1 if station is unknown
+     */
+    public int getNeighbors(int station, int[] result) {
+        int index = Arrays.binarySearch(mStations, station);
+        if (index < 0)
+            return -1;
+
+        int count = Math.min(result.length, mOffsets[index + 1] - mOffsets[index]);
+        for (int i = 0; i < count; i++)
+            result[i] = mStations[mNeighbors[mOffsets[index] + i]];
+
+        return mOffsets[index + 1] - mOffsets[index];
+    }
+
+    /**
+     * @return number of segments on the shortest way between stations, -1 if there is none
+     */
+    public synchronized int getHopDistance(int from, int to) {
+        int source = Arrays.binarySearch(mStations, from), target = Arrays.binarySearch(mStations, to);
+        if (source < 0 || target < 0)
+            return -1;
+
+        search(source, -1, Integer.MAX_VALUE);
+        return mStamps[target] == mStamp ? mDistances[target] : -1;
+    }
+
+    /**
+     * Hops between the closest ends of two segments.
+     *
+     * @return -1 if segments are not connected
+     */
+    public synchronized int getHopDistance(Segment from, Segment to) {
+        if (!search(from, Integer.MAX_VALUE))
+            return -1;
+
+        int distance = Math.min(getDistance(to.getBeginSeg()), getDistance(to.getEndSeg()));
+        return distance == Integer.MAX_VALUE ? -1 : distance;
+    }
+
+    /**
+     * Keeps segments having an end within maxHops of last fix segment ends.
+     *
+     * @return number of segments added to result
+     */
+    public synchronized int prune(List<Segment> segments, Segment last, int maxHops, List<Segment> result) {
+        if (!search(last, maxHops))
+            return 0;
+
+        int count = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+
+            if (getDistance(segment.getBeginSeg()) <= maxHops || getDistance(segment.getEndSeg()) <= maxHops) {
+                result.add(segment);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Searches from both segment ends.
+     *
+     * @return false if neither end is known
+     */
+    private boolean search(Segment from, int maxHops) {
+        int begin = Arrays.binarySearch(mStations, from.getBeginSeg()), end = Arrays.binarySearch(mStations, from.getEndSeg());
+        if (begin < 0 && end < 0)
+            return false;
+
+        search(begin >= 0 ? begin : end, end >= 0 ? end : -1, maxHops);
+        return true;
+    }
+
+    private void search(int source, int secondSource, int maxHops) {
+        mStamp++;
+        int head = 0, tail = 0;
+
+        mQueue[tail++] = source;
+        mStamps[source] = mStamp;
+        mDistances[source] = 0;
+
+        if (secondSource >= 0 && mStamps[secondSource] != mStamp) {
+            mQueue[tail++] = secondSource;
+            mStamps[secondSource] = mStamp;
+            mDistances[secondSource] = 0;
+        }
+
+        while (head < tail) {
+            int station = mQueue[head++], distance = mDistances[station] + 1;
+            if (distance > maxHops)
+                continue;
+
+            for (int n = mOffsets[station]; n < mOffsets[station + 1]; n++) {
+                int neighbor = mNeighbors[n];
+
+                if (mStamps[neighbor] != mStamp) {
+                    mStamps[neighbor] = mStamp;
+                    mDistances[neighbor] = distance;
+                    mQueue[tail++] = neighbor;
+                }
+            }
+        }
+    }
+
+    private int getDistance(int station) {
+        int index = Arrays.binarySearch(mStations, station);
+        return index >= 0 && mStamps[index] == mStamp ? mDistances[index] : Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+/**
+ * Scans heard during the last few seconds, fed by cell change events.
+ * Scans live in a preallocated ring: publishing a filled snapshot hands back the evicted one
+ * to be refilled next time, so continuous scanning does not allocate.
+ * Thread-safe: scans are published from telephony callbacks and read from search thread.
+ */
+public class ObservationWindow {
+    public final static int DEFAULT_CAPACITY = 32;
+
+    private final long mDuration;
+    private final CellSnapshot[] mRing;
+    private int mHead, mSize;
+
+    /**
+     * @param duration window length in milliseconds
+     */
+    public ObservationWindow(long duration) {
+        this(duration, DEFAULT_CAPACITY);
+    }
+
+    public ObservationWindow(long duration, int capacity) {
+        mDuration = duration;
+        mRing = new CellSnapshot[capacity];
+
+        for (int i = 0; i < capacity; i++)
+            mRing[i] = new CellSnapshot();
+    }
+
+    /**
+     * Puts the snapshot to the window, the caller must not touch it afterwards.
+     *
+     * @return snapshot to reuse for the next scan
+     */
+    public synchronized CellSnapshot publish(CellSnapshot snapshot) {
+        CellSnapshot recycled = mRing[mHead];
+        mRing[mHead] = snapshot;
+        mHead = (mHead + 1) % mRing.length;
+
+        if (mSize < mRing.length)
+            mSize++;
+
+        return recycled;
+    }
+
+    /**
+     * Feeds every scan not older than window duration to the aggregator, oldest first.
+     *
+     * @return number of scans aggregated
+     */
+    public synchronized int aggregate(long now, CellAggregator aggregator) {
+        int count = 0;
+
+        for (int i = mSize; i > 0; i--) {
+            CellSnapshot snapshot = mRing[(mHead - i + mRing.length) % mRing.length];
+
+            if (snapshot.getTimeStamp() < now - mDuration)
+                continue;
+
+            aggregator.nextSnapshot();
+            for (int j = 0; j < snapshot.size(); j++)
+                aggregator.add(snapshot.getKey(j), snapshot.getRssi(j));
+
+            count++;
+        }
+
+        return count;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized void clear() {
+        mSize = 0;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms of search stages and event counters shared by all threads of the process.
+ * Timing is always on and costs a couple of nanoTime calls per stage; tracing only tells
+ * callers whether verbose per-query logging is wanted.
+ */
+public class PipelineMetrics {
+    public final static int STAGE_SCAN = 0, STAGE_ACCUMULATE = 1, STAGE_INTERSECT = 2, STAGE_RESOLVE = 3, STAGE_SEARCH = 4,
+            STAGE_WRITE = 5, STAGE_RENDER = 6, STAGE_RENDER_LINES = 7;
+    public final static String[] STAGE_NAMES = {"scan", "accumulate", "intersect", "resolve", "search", "write", "render",
+            "render lines"};
+
+    public final static int COUNT_SEARCHES = 0, COUNT_FOUND = 1, COUNT_CACHE_HITS = 2, COUNT_SEGMENTS = 3, COUNT_ROWS = 4,
+            COUNT_WRITES_DROPPED = 5;
+    public final static String[] COUNTER_NAMES = {"searches", "found", "fix cache hits", "candidate segments", "matched rows",
+            "dropped writes"};
+
+    public final static int DEFAULT_CAPACITY = 256;
+
+    private final LatencyHistogram[] mStages = new LatencyHistogram[STAGE_NAMES.length];
+    private final AtomicLong[] mCounters = new AtomicLong[COUNTER_NAMES.length];
+    private volatile boolean mTracing;
+
+    public PipelineMetrics() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PipelineMetrics(int capacity) {
+        for (int i = 0; i < mStages.length; i++)
+            mStages[i] = new LatencyHistogram(capacity);
+
+        for (int i = 0; i < mCounters.length; i++)
+            mCounters[i] = new AtomicLong();
+    }
+
+    public boolean isTracing() {
+        return mTracing;
+    }
+
+    public void setTracing(boolean tracing) {
+        mTracing = tracing;
+    }
+
+    /**
+     * @return start time to pass to {@link #stop}
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records time elapsed since start for the stage.
+     *
+     * @return current time, so consecutive stages can be chained
+     */
+    public long stop(int stage, long start) {
+        long now = System.nanoTime();
+        mStages[stage].record(now - start);
+        return now;
+    }
+
+    public void count(int counter) {
+        mCounters[counter].incrementAndGet();
+    }
+
+    public void count(int counter, long delta) {
+        mCounters[counter].addAndGet(delta);
+    }
+
+    public long getCount(int counter) {
+        return mCounters[counter].get();
+    }
+
+    public LatencyHistogram getHistogram(int stage) {
+        return mStages[stage];
+    }
+
+    public void reset() {
+        for (LatencyHistogram stage : mStages)
+            stage.reset();
+
+        for (AtomicLong counter : mCounters)
+            counter.set(0);
+    }
+
+    /**
+     * Plain text table of stage percentiles in milliseconds followed by counters.
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        long[] samples = new long[mStages[0].getCapacity()];
+        report.append(String.format(Locale.US, "%-13s%8s%9s%9s%9s%9s%n", "stage", "count", "p50", "p95", "p99", "mean"));
+
+        for (int i = 0; i < mStages.length; i++) {
+            LatencyHistogram stage = mStages[i];
+            long count = stage.getCount();
+            int kept = stage.getSortedSamples(samples);
+
+            report.append(String.format(Locale.US, "%-13s%8d%9.2f%9.2f%9.2f%9.2f%n", STAGE_NAMES[i], count,
+                    toMillis(LatencyHistogram.getPercentile(samples, kept, 50)),
+                    toMillis(LatencyHistogram.getPercentile(samples, kept, 95)),
+                    toMillis(LatencyHistogram.getPercentile(samples, kept, 99)),
+                    count == 0 ? 0 : toMillis(stage.getTotal() / count)));
+        }
+
+        report.append(String.format(Locale.US, "%n"));
+        for (int i = 0; i < mCounters.length; i++)
+            report.append(String.format(Locale.US, "%-20s%d%n", COUNTER_NAMES[i], mCounters[i].get()));
+
+        return report.toString();
+    }
+
+    public void write(File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+        try {
+            writer.write(getReport());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs positioning task on one long-lived background thread. Requests coming in a burst
+ * are coalesced into one run after a short delay, and runs never overlap: a request made
+ * while the task runs schedules exactly one more run after it.
+ * Release task is run on the same thread after the last run when scheduler stops,
+ * so resources used by the task can be freed there.
+ */
+public class PositioningScheduler {
+    private final Runnable mTask, mRelease;
+    private final long mDelay;
+    private final AtomicBoolean mPending = new AtomicBoolean();
+    private ScheduledThreadPoolExecutor mExecutor;
+
+    /**
+     * @param release may be null
+     * @param delay   milliseconds to wait for more requests before running
+     */
+    public PositioningScheduler(Runnable task, Runnable release, long delay) {
+        mTask = task;
+        mRelease = release;
+        mDelay = delay;
+    }
+
+    public synchronized void start() {
+        if (mExecutor != null)
+            return;
+
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "positioning");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Drops pending requests and returns at once, release runs on the scheduler thread
+     * after the running task.
+     */
+    public synchronized void stop() {
+        if (mExecutor == null)
+            return;
+
+        // cleared here rather than by shutdown policy, so the release queued next is kept
+        mExecutor.getQueue().clear();
+        mPending.set(false);
+
+        if (mRelease != null)
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mRelease.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+
+        mExecutor.shutdown();
+        mExecutor = null;
+    }
+
+    public synchronized boolean isStarted() {
+        return mExecutor != null;
+    }
+
+    public synchronized void request() {
+        if (mExecutor == null || !mPending.compareAndSet(false, true))
+            return;
+
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mPending.set(false);
+                mTask.run();
+            }
+        }, mDelay, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+/**
+ * Part of a segment, expressed as ration bounds from 0 (seg_begin) to 1 (seg_end).
+ */
+public class RatioInterval {
+    private final double mMin, mMax;
+
+    public RatioInterval(double min, double max) {
+        mMin = min;
+        mMax = max;
+    }
+
+    public double getMin() {
+        return mMin;
+    }
+
+    public double getMax() {
+        return mMax;
+    }
+
+    public boolean contains(double ratio) {
+        return ratio >= mMin && ratio <= mMax;
+    }
+
+    @Override
+    public String toString() {
+        return "min: " + mMin + " max: " + mMax;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Folds matched rows into one {@link SegmentEstimate} per segment as they come.
+ */
+public class ResultReducer {
+    private final Map<Long, SegmentEstimate> mEstimates = new HashMap<>();
+    private final List<SegmentEstimate> mOrder = new ArrayList<>();
+
+    public ResultReducer add(LogPoint row, double weight) {
+        Long key = CellKey.pack(row.getSegBegin(), row.getSegEnd());
+        SegmentEstimate estimate = mEstimates.get(key);
+
+        if (estimate == null) {
+            estimate = new SegmentEstimate(new Segment(row.getSegBegin(), row.getSegEnd()));
+            mEstimates.put(key, estimate);
+            mOrder.add(estimate);
+        }
+
+        estimate.add(row, weight);
+        return this;
+    }
+
+    public ResultReducer add(LogPoint row) {
+        return add(row, 1);
+    }
+
+    /**
+     * @return estimates with more supporting cells first, then heavier ones
+     */
+    public List<SegmentEstimate> getEstimates() {
+        List<SegmentEstimate> estimates = new ArrayList<>(mOrder);
+
+        Collections.sort(estimates, new Comparator<SegmentEstimate>() {
+            @Override
+            public int compare(SegmentEstimate lhs, SegmentEstimate rhs) {
+                if (lhs.getCellCount() != rhs.getCellCount())
+                    return lhs.getCellCount() > rhs.getCellCount() ? -1 : 1;
+
+                return Double.compare(rhs.getWeight(), lhs.getWeight());
+            }
+        });
+
+        return estimates;
+    }
+
+    /**
+     * Weights every row by how close its power is to the observed one of its cell,
+     * rows of cells which are not observed count as one.
+     */
+    public static List<SegmentEstimate> reduce(List<LogPoint> rows, List<? extends CellObservation> cells) {
+        ResultReducer reducer = new ResultReducer();
+
+        for (LogPoint row : rows) {
+            double weight = 1;
+
+            for (CellObservation cell : cells) {
+                if (cell.getLac() == row.getLac() && cell.getCid() == row.getCid()) {
+                    weight = 1.0 / (1 + Math.abs(row.getPower() - cell.getRssi()));
+                    break;
+                }
+            }
+
+            reducer.add(row, weight);
+        }
+
+        return reducer.getEstimates();
+    }
+}
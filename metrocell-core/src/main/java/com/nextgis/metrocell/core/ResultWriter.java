@@ -0,0 +1,198 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes found points as lac, cid, power, lat, lon CSV files on a single background thread.
+ * Search thread only enqueues rows; writer reuses one buffer and opens one channel per file.
+ */
+public class ResultWriter {
+    public final static int DEFAULT_CAPACITY = 16;
+    private final static int BUFFER_SIZE = 16 * 1024;
+
+    public interface OnWrittenListener {
+        void onWritten(File file);
+    }
+
+    private final static class Job {
+        final File mFile;
+        final List<LogPoint> mPoints;
+
+        Job(File file, List<LogPoint> points) {
+            mFile = file;
+            mPoints = points;
+        }
+    }
+
+    private final static Job STOP = new Job(null, null);
+
+    private final BlockingQueue<Job> mQueue;
+    private final String mHeader, mSeparator;
+    private final OnWrittenListener mListener;
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder mLine = new StringBuilder(64);
+    private final List<Job> mBatch = new ArrayList<>();
+    private Thread mThread;
+    private volatile PipelineMetrics mMetrics;
+
+    public ResultWriter(String header, String separator, OnWrittenListener listener) {
+        this(header, separator, listener, DEFAULT_CAPACITY);
+    }
+
+    public ResultWriter(String header, String separator, OnWrittenListener listener, int capacity) {
+        mQueue = new ArrayBlockingQueue<>(capacity);
+        mHeader = header;
+        mSeparator = separator;
+        mListener = listener;
+    }
+
+    /**
+     * Times writing of every file.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Queues points to be written to a new file, never blocks.
+     *
+     * @return false if queue is full and points were dropped
+     */
+    public synchronized boolean submit(File file, List<LogPoint> points) {
+        if (mThread == null) {
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "result-writer");
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+
+        return mQueue.offer(new Job(file, new ArrayList<>(points)));
+    }
+
+    /**
+     * Stops writer thread after all queued files are written.
+     */
+    public synchronized void close() throws InterruptedException {
+        if (mThread == null)
+            return;
+
+        // channels are interruptible, so writer is stopped by a marker job instead of interrupt()
+        mQueue.put(STOP);
+        mThread.join();
+        mThread = null;
+    }
+
+    private void drain() {
+        while (true) {
+            try {
+                mBatch.add(mQueue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            mQueue.drainTo(mBatch);
+            for (int i = 0; i < mBatch.size(); i++) {
+                Job job = mBatch.get(i);
+
+                if (job == STOP) {
+                    mBatch.clear();
+                    return;
+                }
+
+                write(job);
+            }
+
+            mBatch.clear();
+        }
+    }
+
+    private void write(Job job) {
+        FileChannel channel = null;
+        long start = PipelineMetrics.start();
+
+        try {
+            channel = new FileOutputStream(job.mFile, true).getChannel();
+            mBuffer.clear();
+            mLine.setLength(0);
+            mLine.append(mHeader).append('\n');
+            put(channel);
+
+            for (int i = 0; i < job.mPoints.size(); i++) {
+                LogPoint point = job.mPoints.get(i);
+                mLine.setLength(0);
+                mLine.append(point.getLac()).append(mSeparator).append(point.getCid()).append(mSeparator)
+                        .append(point.getPower()).append(mSeparator).append(point.getY()).append(mSeparator)
+                        .append(point.getX()).append('\n');
+                put(channel);
+            }
+
+            flush(channel);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        } finally {
+            if (channel != null)
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+        }
+
+        PipelineMetrics metrics = mMetrics;
+        if (metrics != null)
+            metrics.stop(PipelineMetrics.STAGE_WRITE, start);
+
+        if (mListener != null)
+            mListener.onWritten(job.mFile);
+    }
+
+    // rows are plain ASCII, so chars go to buffer as is
+    private void put(FileChannel channel) throws IOException {
+        if (mBuffer.remaining() < mLine.length())
+            flush(channel);
+
+        for (int i = 0; i < mLine.length(); i++)
+            mBuffer.put((byte) mLine.charAt(i));
+    }
+
+    private void flush(FileChannel channel) throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining())
+            channel.write(mBuffer);
+
+        mBuffer.clear();
+    }
+}
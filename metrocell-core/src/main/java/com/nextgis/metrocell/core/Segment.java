@@ -0,0 +1,64 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+/**
+ * Metro segment between two stations, as stored in seg_begin/seg_end of log_points.
+ */
+public class Segment {
+    private final int mBeginSeg, mEndSeg;
+
+    public Segment(int beginSeg, int endSeg) {
+        mBeginSeg = beginSeg;
+        mEndSeg = endSeg;
+    }
+
+    public int getBeginSeg() {
+        return mBeginSeg;
+    }
+
+    public int getEndSeg() {
+        return mEndSeg;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+
+        if (!(o instanceof Segment))
+            return false;
+
+        Segment segment = (Segment) o;
+        return mBeginSeg == segment.mBeginSeg && mEndSeg == segment.mEndSeg;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mBeginSeg + mEndSeg;
+    }
+
+    @Override
+    public String toString() {
+        return mBeginSeg + "-" + mEndSeg;
+    }
+}
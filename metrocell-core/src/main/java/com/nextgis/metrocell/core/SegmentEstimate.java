@@ -0,0 +1,129 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.Arrays;
+
+/**
+ * Position on one segment reduced from its matched rows: ratio interval, weighted centroid with
+ * its spread and the number of distinct cells supporting it. Rows are folded in one at a time
+ * with weighted Welford updates, memory does not grow with rows.
+ */
+public class SegmentEstimate {
+    private final Segment mSegment;
+    private double mMinRatio = Double.MAX_VALUE, mMaxRatio = -Double.MAX_VALUE, mRatio;
+    private double mX, mY, mSquares;
+    private double mWeight, mRatioWeight;
+    private int mRowCount;
+    private long[] mCells = new long[4];
+    private int mCellCount;
+
+    SegmentEstimate(Segment segment) {
+        mSegment = segment;
+    }
+
+    void add(LogPoint row, double weight) {
+        if (weight <= 0)
+            return;
+
+        mRowCount++;
+        mWeight += weight;
+        double share = weight / mWeight;
+
+        // rows without ratio still place the centroid, but don't pull the mean ratio
+        if (!Double.isNaN(row.getRatio())) {
+            mRatioWeight += weight;
+            mMinRatio = Math.min(mMinRatio, row.getRatio());
+            mMaxRatio = Math.max(mMaxRatio, row.getRatio());
+            mRatio += (row.getRatio() - mRatio) * weight / mRatioWeight;
+        }
+
+        double dx = row.getX() - mX, dy = row.getY() - mY;
+        mX += dx * share;
+        mY += dy * share;
+        mSquares += weight * (dx * (row.getX() - mX) + dy * (row.getY() - mY));
+
+        long cell = CellKey.pack(row.getLac(), row.getCid());
+        for (int i = 0; i < mCellCount; i++)
+            if (mCells[i] == cell)
+                return;
+
+        if (mCellCount == mCells.length)
+            mCells = Arrays.copyOf(mCells, mCellCount * 2);
+
+        mCells[mCellCount++] = cell;
+    }
+
+    public Segment getSegment() {
+        return mSegment;
+    }
+
+    /**
+     * @return NaN if rows have no ratio
+     */
+    public double getMinRatio() {
+        return mMinRatio <= mMaxRatio ? mMinRatio : Double.NaN;
+    }
+
+    public double getMaxRatio() {
+        return mMinRatio <= mMaxRatio ? mMaxRatio : Double.NaN;
+    }
+
+    /**
+     * @return weighted mean ratio
+     */
+    public double getRatio() {
+        return mMinRatio <= mMaxRatio ? mRatio : Double.NaN;
+    }
+
+    public double getX() {
+        return mX;
+    }
+
+    public double getY() {
+        return mY;
+    }
+
+    /**
+     * @return weighted root mean square distance of rows from the centroid
+     */
+    public double getRadius() {
+        return mWeight > 0 ? Math.sqrt(Math.max(0, mSquares) / mWeight) : 0;
+    }
+
+    public double getWeight() {
+        return mWeight;
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public int getCellCount() {
+        return mCellCount;
+    }
+
+    @Override
+    public String toString() {
+        return mSegment + " [" + getMinRatio() + ", " + getMaxRatio() + "] " + mCellCount + " cells, " + mRowCount + " rows, r=" + getRadius();
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ranks (segment, ratio bucket) states by log-likelihood of observed cells instead of requiring
+ * every cell to be heard on the segment. Power of a cell in a state is modelled as gaussian around
+ * the surveyed mean with missing penalty as outlier floor; observed cells missing from a state and
+ * state cells not observed are penalized.
+ * <p/>
+ * Survey is kept as postings per cell in CSR layout, ranking touches only postings of observed cells.
+ * Scratch arrays are reused, so calls are serialized.
+ */
+public class SegmentRanker {
+    public final static int DEFAULT_BUCKETS = 10;
+    public final static float DEFAULT_MIN_SIGMA = 4;
+    public final static float DEFAULT_MISSING_PENALTY = -5;
+    public final static float DEFAULT_UNHEARD_PENALTY = -1;
+
+    private final int mBuckets;
+    private final Segment[] mSegments;
+    // per state
+    private final int[] mStateSegments, mStateBuckets, mStateCells;
+    private final float[] mStateXs, mStateYs;
+    // per cell postings
+    private final long[] mKeys;
+    private final int[] mOffsets, mPostingStates;
+    private final float[] mPostingMeans, mPostingWeights, mPostingNorms;
+
+    private float mMissingPenalty = DEFAULT_MISSING_PENALTY, mUnheardPenalty = DEFAULT_UNHEARD_PENALTY;
+    private final float[] mLikelihoods;
+    private final float[] mScores;
+    private final int[] mMatched, mTouched;
+
+    SegmentRanker(int buckets, Segment[] segments, int[] stateSegments, int[] stateBuckets, int[] stateCells, float[] stateXs,
+                  float[] stateYs, long[] keys, int[] offsets, int[] postingStates, float[] postingMeans, float[] postingWeights,
+                  float[] postingNorms) {
+        mBuckets = buckets;
+        mSegments = segments;
+        mStateSegments = stateSegments;
+        mStateBuckets = stateBuckets;
+        mStateCells = stateCells;
+        mStateXs = stateXs;
+        mStateYs = stateYs;
+        mKeys = keys;
+        mOffsets = offsets;
+        mPostingStates = postingStates;
+        mPostingMeans = postingMeans;
+        mPostingWeights = postingWeights;
+        mPostingNorms = postingNorms;
+
+        mLikelihoods = new float[stateSegments.length];
+        mScores = new float[stateSegments.length];
+        mMatched = new int[stateSegments.length];
+        mTouched = new int[stateSegments.length];
+    }
+
+    /**
+     * @param missing score of an observed cell never heard in a state
+     * @param unheard score of a state cell which is not observed
+     */
+    public void setPenalties(float missing, float unheard) {
+        mMissingPenalty = missing;
+        mUnheardPenalty = unheard;
+    }
+
+    /**
+     * Writes up to k best states to states and their scores to scores, best first. Cell power
+     * is the middle of its accumulated power range.
+     *
+     * @return number of ranked states
+     */
+    public synchronized int rank(List<? extends CellObservation> cells, int k, int[] states, float[] scores) {
+        if (k <= 0)
+            return 0;
+
+        int touched = score(cells, mTouched, mScores), count = 0;
+
+        for (int t = 0; t < touched; t++) {
+            float score = mScores[t];
+
+            // insertion into k best, k is small
+            if (count == k && score <= scores[k - 1])
+                continue;
+
+            int i = count < k ? count++ : k - 1;
+            while (i > 0 && scores[i - 1] < score) {
+                scores[i] = scores[i - 1];
+                states[i] = states[i - 1];
+                i--;
+            }
+
+            scores[i] = score;
+            states[i] = mTouched[t];
+        }
+
+        return count;
+    }
+
+    /**
+     * Scores every state having any of the cells, in no particular order. Other states score
+     * {@link #getBaseScore}.
+     *
+     * @param states at least {@link #getStateCount()} long, as well as scores
+     * @return number of scored states
+     */
+    public synchronized int score(List<? extends CellObservation> cells, int[] states, float[] scores) {
+        int touched = 0, observed = 0;
+
+        for (int c = 0; c < cells.size(); c++) {
+            CellObservation cell = cells.get(c);
+            if (cell.isInvalid())
+                continue;
+
+            observed++;
+            int index = Arrays.binarySearch(mKeys, CellKey.pack(cell.getLac(), cell.getCid()));
+            if (index < 0)
+                continue;
+
+            float power = (cell.getMinPower() + cell.getMaxPower()) * 0.5f;
+            for (int p = mOffsets[index]; p < mOffsets[index + 1]; p++) {
+                int state = mPostingStates[p];
+
+                if (mMatched[state] == 0)
+                    states[touched++] = state;
+
+                // outliers are no less likely than a missing cell, so one bad reading can't veto a state
+                float delta = power - mPostingMeans[p];
+                mLikelihoods[state] += Math.max(mMissingPenalty, mPostingNorms[p] - delta * delta * mPostingWeights[p]);
+                mMatched[state]++;
+            }
+        }
+
+        for (int t = 0; t < touched; t++) {
+            int state = states[t], matched = mMatched[state];
+            scores[t] = mLikelihoods[state] + (observed - matched) * mMissingPenalty + (mStateCells[state] - matched) * mUnheardPenalty;
+            mLikelihoods[state] = 0;
+            mMatched[state] = 0;
+        }
+
+        return touched;
+    }
+
+    /**
+     * Score of a state having none of observed cells.
+     *
+     * @param observed number of valid cells, see {@link #countObserved}
+     */
+    public float getBaseScore(int state, int observed) {
+        return observed * mMissingPenalty + mStateCells[state] * mUnheardPenalty;
+    }
+
+    public static int countObserved(List<? extends CellObservation> cells) {
+        int observed = 0;
+
+        for (int c = 0; c < cells.size(); c++)
+            if (!cells.get(c).isInvalid())
+                observed++;
+
+        return observed;
+    }
+
+    public int getStateCount() {
+        return mStateSegments.length;
+    }
+
+    public int getCellCount() {
+        return mKeys.length;
+    }
+
+    public int getBuckets() {
+        return mBuckets;
+    }
+
+    public Segment getSegment(int state) {
+        return mSegments[mStateSegments[state]];
+    }
+
+    public int getSegmentId(int state) {
+        return mStateSegments[state];
+    }
+
+    public int getSegmentCount() {
+        return mSegments.length;
+    }
+
+    public Segment getSegmentById(int id) {
+        return mSegments[id];
+    }
+
+    /**
+     * States follow (segment id, bucket) order, so buckets of a segment are consecutive.
+     *
+     * @return state or -1 if the bucket has no surveyed rows
+     */
+    public int findState(int segmentId, int bucket) {
+        int low = 0, high = mStateSegments.length - 1, key = segmentId * mBuckets + bucket;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1, value = mStateSegments[mid] * mBuckets + mStateBuckets[mid];
+
+            if (value < key)
+                low = mid + 1;
+            else if (value > key)
+                high = mid - 1;
+            else
+                return mid;
+        }
+
+        return -1;
+    }
+
+    public int getBucket(int state) {
+        return mStateBuckets[state];
+    }
+
+    /**
+     * Middle of state's ratio bucket.
+     */
+    public double getRatio(int state) {
+        return (mStateBuckets[state] + 0.5) / mBuckets;
+    }
+
+    /**
+     * Mean position of surveyed rows in the state.
+     */
+    public double getX(int state) {
+        return mStateXs[state];
+    }
+
+    public double getY(int state) {
+        return mStateYs[state];
+    }
+
+    public static class Builder {
+        private final int mBuckets;
+        private final float mMinSigma;
+
+        private long[] mSegs = new long[1024];
+        private long[] mKeys = new long[1024];
+        private int[] mRatioBuckets = new int[1024];
+        private int[] mPowers = new int[1024];
+        private double[] mXs = new double[1024];
+        private double[] mYs = new double[1024];
+        private int mSize;
+
+        public Builder() {
+            this(DEFAULT_BUCKETS, DEFAULT_MIN_SIGMA);
+        }
+
+        /**
+         * @param minSigma lower bound of power deviation, accounts for measurement noise of sparse cells
+         */
+        public Builder(int buckets, float minSigma) {
+            mBuckets = buckets;
+            mMinSigma = minSigma;
+        }
+
+        public Builder add(int segBegin, int segEnd, double ratio, int lac, int cid, int power, double x, double y) {
+            if (Double.isNaN(ratio))
+                return this;
+
+            if (mSize == mSegs.length) {
+                int size = mSize * 2;
+                mSegs = Arrays.copyOf(mSegs, size);
+                mKeys = Arrays.copyOf(mKeys, size);
+                mRatioBuckets = Arrays.copyOf(mRatioBuckets, size);
+                mPowers = Arrays.copyOf(mPowers, size);
+                mXs = Arrays.copyOf(mXs, size);
+                mYs = Arrays.copyOf(mYs, size);
+            }
+
+            mSegs[mSize] = CellKey.pack(segBegin, segEnd);
+            mKeys[mSize] = CellKey.pack(lac, cid);
+            mRatioBuckets[mSize] = Math.max(0, Math.min(mBuckets - 1, (int) (ratio * mBuckets)));
+            mPowers[mSize] = power;
+            mXs[mSize] = x;
+            mYs[mSize] = y;
+            mSize++;
+            return this;
+        }
+
+        public Builder add(LogPoint row) {
+            return add(row.getSegBegin(), row.getSegEnd(), row.getRatio(), row.getLac(), row.getCid(), row.getPower(), row.getX(), row.getY());
+        }
+
+        public SegmentRanker build() {
+            // segment dictionary, ids follow (seg_begin, seg_end) order
+            long[] segs = Arrays.copyOf(mSegs, mSize);
+            Arrays.sort(segs);
+            int segCount = 0;
+            for (int i = 0; i < segs.length; i++)
+                if (segCount == 0 || segs[segCount - 1] != segs[i])
+                    segs[segCount++] = segs[i];
+
+            Segment[] segments = new Segment[segCount];
+            for (int i = 0; i < segCount; i++)
+                segments[i] = new Segment(CellKey.getLac(segs[i]), CellKey.getCid(segs[i]));
+
+            final int[] states = new int[mSize];
+            for (int i = 0; i < mSize; i++)
+                states[i] = Arrays.binarySearch(segs, 0, segCount, mSegs[i]) * mBuckets + mRatioBuckets[i];
+
+            // rows by (state, cell)
+            Integer[] order = new Integer[mSize];
+            for (int i = 0; i < mSize; i++)
+                order[i] = i;
+
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lhs, Integer rhs) {
+                    if (states[lhs] != states[rhs])
+                        return states[lhs] < states[rhs] ? -1 : 1;
+
+                    return mKeys[lhs] < mKeys[rhs] ? -1 : (mKeys[lhs] == mKeys[rhs] ? 0 : 1);
+                }
+            });
+
+            int stateCount = 0, pairCount = 0;
+            int[] stateSegments = new int[mSize], stateBuckets = new int[mSize], stateCells = new int[mSize];
+            float[] stateXs = new float[mSize], stateYs = new float[mSize];
+            long[] pairKeys = new long[mSize];
+            int[] pairStates = new int[mSize];
+            float[] pairMeans = new float[mSize], pairWeights = new float[mSize], pairNorms = new float[mSize];
+
+            for (int begin = 0, end; begin < mSize; begin = end) {
+                int state = states[order[begin]];
+                double x = 0, y = 0;
+
+                for (end = begin; end < mSize && states[order[end]] == state; end++) {
+                    x += mXs[order[end]];
+                    y += mYs[order[end]];
+                }
+
+                stateSegments[stateCount] = state / mBuckets;
+                stateBuckets[stateCount] = state % mBuckets;
+                stateXs[stateCount] = (float) (x / (end - begin));
+                stateYs[stateCount] = (float) (y / (end - begin));
+
+                for (int first = begin, last; first < end; first = last) {
+                    long key = mKeys[order[first]];
+                    double sum = 0, sumSq = 0;
+
+                    for (last = first; last < end && mKeys[order[last]] == key; last++) {
+                        sum += mPowers[order[last]];
+                        sumSq += (double) mPowers[order[last]] * mPowers[order[last]];
+                    }
+
+                    int n = last - first;
+                    double mean = sum / n;
+                    double variance = Math.max(0, sumSq / n - mean * mean) + mMinSigma * mMinSigma;
+
+                    pairKeys[pairCount] = key;
+                    pairStates[pairCount] = stateCount;
+                    pairMeans[pairCount] = (float) mean;
+                    pairWeights[pairCount] = (float) (0.5 / variance);
+                    pairNorms[pairCount] = (float) (-0.5 * Math.log(variance));
+                    pairCount++;
+                    stateCells[stateCount]++;
+                }
+
+                stateCount++;
+            }
+
+            // postings by cell, states ascending within a cell
+            Integer[] pairs = new Integer[pairCount];
+            for (int i = 0; i < pairCount; i++)
+                pairs[i] = i;
+
+            final long[] keys = pairKeys;
+            final int[] pairStateIds = pairStates;
+            Arrays.sort(pairs, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lhs, Integer rhs) {
+                    if (keys[lhs] != keys[rhs])
+                        return keys[lhs] < keys[rhs] ? -1 : 1;
+
+                    return pairStateIds[lhs] < pairStateIds[rhs] ? -1 : (pairStateIds[lhs] == pairStateIds[rhs] ? 0 : 1);
+                }
+            });
+
+            long[] cellKeys = new long[pairCount];
+            int[] offsets = new int[pairCount + 1];
+            int[] postingStates = new int[pairCount];
+            float[] postingMeans = new float[pairCount], postingWeights = new float[pairCount], postingNorms = new float[pairCount];
+            int cellCount = 0;
+
+            for (int i = 0; i < pairCount; i++) {
+                int pair = pairs[i];
+
+                if (cellCount == 0 || cellKeys[cellCount - 1] != keys[pair]) {
+                    cellKeys[cellCount] = keys[pair];
+                    offsets[cellCount++] = i;
+                }
+
+                postingStates[i] = pairStates[pair];
+                postingMeans[i] = pairMeans[pair];
+                postingWeights[i] = pairWeights[pair];
+                postingNorms[i] = pairNorms[pair];
+            }
+
+            offsets[cellCount] = pairCount;
+            return new SegmentRanker(mBuckets, segments, Arrays.copyOf(stateSegments, stateCount), Arrays.copyOf(stateBuckets, stateCount),
+                    Arrays.copyOf(stateCells, stateCount), Arrays.copyOf(stateXs, stateCount), Arrays.copyOf(stateYs, stateCount),
+                    Arrays.copyOf(cellKeys, cellCount), Arrays.copyOf(offsets, cellCount + 1), postingStates, postingMeans,
+                    postingWeights, postingNorms);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.List;
+
+/**
+ * {@link FingerprintSource} able to resolve all candidate segments at once
+ * instead of asking ratio interval and points segment by segment.
+ */
+public interface SegmentResolver {
+    /**
+     * Same as {@link FingerprintSource#getRatioInterval} followed by {@link FingerprintSource#getPoints}
+     * for every segment, points come in segments order.
+     *
+     * @return false if some segment has no rows within cells power range, result content is undefined then
+     */
+    boolean resolve(List<Segment> segments, List<? extends CellObservation> cells, int powerDelta, List<LogPoint> result);
+}
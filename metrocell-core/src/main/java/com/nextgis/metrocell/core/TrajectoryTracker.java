@@ -0,0 +1,349 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Online Viterbi over {@link SegmentRanker} states. A train moves to adjacent buckets of its segment
+ * or, at segment ends, to segments sharing that station; the number of hops per scan is bounded by
+ * elapsed time. Only states within the beam of the best one stay active, so an update costs
+ * O(active states) however long the trip is.
+ * <p/>
+ * Backpointers of the last few scans are kept to return the smoothed path behind the current fix.
+ */
+public class TrajectoryTracker {
+    public final static long DEFAULT_BUCKET_TIME = 10000;   // ms a train spends in one ratio bucket at most
+    public final static int DEFAULT_HISTORY = 16;
+    public final static float DEFAULT_HOP_PENALTY = -1;
+    public final static float DEFAULT_JUMP_PENALTY = -20;
+    public final static float DEFAULT_BEAM = 25;
+    private final static int MAX_HOPS = 8;
+    private final static float NONE = Float.NEGATIVE_INFINITY;
+
+    private final SegmentRanker mRanker;
+    // state graph in CSR layout
+    private final int[] mOffsets, mNeighbors;
+
+    private long mBucketTime = DEFAULT_BUCKET_TIME;
+    private float mHopPenalty = DEFAULT_HOP_PENALTY, mJumpPenalty = DEFAULT_JUMP_PENALTY, mBeam = DEFAULT_BEAM;
+
+    // scores of active states relative to the best one, NONE elsewhere
+    private final float[] mScores, mNext;
+    private final int[] mOrigins, mStamps;
+    private final int[] mActive, mCandidates, mFrontier, mNextFrontier, mTouched;
+    private final float[] mFrontierScores, mNextFrontierScores, mTouchedScores;
+    private final int[][] mBack;
+    private int mActiveCount, mBest = -1, mSteps, mStamp;
+    private long mLastTime;
+
+    public TrajectoryTracker(SegmentRanker ranker) {
+        this(ranker, DEFAULT_HISTORY);
+    }
+
+    public TrajectoryTracker(SegmentRanker ranker, int history) {
+        mRanker = ranker;
+        int count = ranker.getStateCount();
+
+        int[] degrees = new int[count + 1];
+        long[] ends = getSegmentEnds(ranker);
+        link(ranker, ends, degrees, null);
+
+        mOffsets = new int[count + 1];
+        for (int i = 0; i < count; i++)
+            mOffsets[i + 1] = mOffsets[i] + degrees[i];
+
+        mNeighbors = new int[mOffsets[count]];
+        link(ranker, ends, Arrays.copyOf(mOffsets, count), mNeighbors);
+
+        mScores = new float[count];
+        mNext = new float[count];
+        Arrays.fill(mScores, NONE);
+        Arrays.fill(mNext, NONE);
+        mOrigins = new int[count];
+        mStamps = new int[count];
+        mActive = new int[count];
+        mCandidates = new int[count];
+        mFrontier = new int[count];
+        mNextFrontier = new int[count];
+        mTouched = new int[count];
+        mFrontierScores = new float[count];
+        mNextFrontierScores = new float[count];
+        mTouchedScores = new float[count];
+        mBack = new int[history][count];
+    }
+
+    /**
+     * @param bucketTime minimal time in ms a train needs to pass one ratio bucket
+     */
+    public void setBucketTime(long bucketTime) {
+        mBucketTime = bucketTime;
+    }
+
+    /**
+     * @param hop   log-probability of moving to an adjacent state
+     * @param jump  log-probability of appearing anywhere, used to recover after losing track
+     * @param beam  states scoring worse than the best one by more than beam are dropped
+     */
+    public void setPenalties(float hop, float jump, float beam) {
+        mHopPenalty = hop;
+        mJumpPenalty = jump;
+        mBeam = beam;
+    }
+
+    /**
+     * Advances trellis by one scan.
+     *
+     * @return most likely current state or -1 if there is none yet
+     */
+    public synchronized int update(List<? extends CellObservation> cells, long timeStamp) {
+        int observed = SegmentRanker.countObserved(cells);
+        if (observed == 0)
+            return mBest;
+
+        int candidates = propagate(getHops(timeStamp));
+        int touched = mRanker.score(cells, mTouched, mTouchedScores);
+
+        for (int i = 0; i < candidates; i++) {
+            int state = mCandidates[i];
+            mNext[state] += mRanker.getBaseScore(state, observed);
+        }
+
+        // previous scores are relative to the best state, so jumps start from zero
+        for (int t = 0; t < touched; t++) {
+            int state = mTouched[t];
+
+            if (mNext[state] != NONE) {
+                mNext[state] += mTouchedScores[t] - mRanker.getBaseScore(state, observed);
+            } else {
+                mNext[state] = mJumpPenalty + mTouchedScores[t];
+                mOrigins[state] = mBest;
+                mCandidates[candidates++] = state;
+            }
+        }
+
+        for (int i = 0; i < mActiveCount; i++)
+            mScores[mActive[i]] = NONE;
+
+        float best = NONE;
+        for (int i = 0; i < candidates; i++)
+            if (mNext[mCandidates[i]] > best) {
+                best = mNext[mCandidates[i]];
+                mBest = mCandidates[i];
+            }
+
+        int[] back = mBack[mSteps % mBack.length];
+        mActiveCount = 0;
+
+        for (int i = 0; i < candidates; i++) {
+            int state = mCandidates[i];
+
+            if (mNext[state] >= best - mBeam) {
+                mScores[state] = mNext[state] - best;
+                back[state] = mOrigins[state];
+                mActive[mActiveCount++] = state;
+            }
+
+            mNext[state] = NONE;
+        }
+
+        if (mActiveCount == 0) {
+            reset();
+            return -1;
+        }
+
+        mSteps++;
+        mLastTime = timeStamp;
+        return mBest;
+    }
+
+    /**
+     * Writes most likely states of the last scans up to the current one, oldest first.
+     *
+     * @return number of states written
+     */
+    public synchronized int getPath(int[] states) {
+        if (mBest < 0)
+            return 0;
+
+        int length = Math.min(Math.min(mSteps, mBack.length), states.length), count = 0;
+        for (int state = mBest; count < length && state >= 0; count++)
+            state = mBack[(mSteps - 1 - count) % mBack.length][state];
+
+        for (int i = 0, state = mBest; i < count; i++) {
+            states[count - 1 - i] = state;
+            state = mBack[(mSteps - 1 - i) % mBack.length][state];
+        }
+
+        return count;
+    }
+
+    public synchronized int getState() {
+        return mBest;
+    }
+
+    public synchronized int getActiveCount() {
+        return mActiveCount;
+    }
+
+    public SegmentRanker getRanker() {
+        return mRanker;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < mActiveCount; i++)
+            mScores[mActive[i]] = NONE;
+
+        mActiveCount = 0;
+        mBest = -1;
+        mSteps = 0;
+        mLastTime = 0;
+    }
+
+    private int getHops(long timeStamp) {
+        if (mLastTime == 0)
+            return 0;
+
+        long hops = (timeStamp - mLastTime + mBucketTime - 1) / mBucketTime;
+        return (int) Math.max(1, Math.min(MAX_HOPS, hops));
+    }
+
+    /**
+     * Moves active states up to hops along state graph into candidates, keeping the best origin of each.
+     */
+    private int propagate(int hops) {
+        int candidates = 0, frontier = 0;
+
+        for (int i = 0; i < mActiveCount; i++) {
+            int state = mActive[i];
+            mNext[state] = mScores[state];
+            mOrigins[state] = state;
+            mCandidates[candidates++] = state;
+            mFrontier[frontier] = state;
+            mFrontierScores[frontier++] = mScores[state];
+        }
+
+        int[] current = mFrontier, next = mNextFrontier;
+        float[] currentScores = mFrontierScores, nextScores = mNextFrontierScores;
+
+        for (int hop = 0; hop < hops && frontier > 0; hop++) {
+            int nextFrontier = 0;
+            mStamp++;
+
+            // scores are taken as they were at the start of the hop, so no path is longer than hops
+            for (int f = 0; f < frontier; f++) {
+                int state = current[f];
+                float score = currentScores[f] + mHopPenalty;
+
+                for (int n = mOffsets[state]; n < mOffsets[state + 1]; n++) {
+                    int neighbor = mNeighbors[n];
+
+                    if (score <= mNext[neighbor])
+                        continue;
+
+                    if (mNext[neighbor] == NONE)
+                        mCandidates[candidates++] = neighbor;
+
+                    mNext[neighbor] = score;
+                    mOrigins[neighbor] = mOrigins[state];
+
+                    if (mStamps[neighbor] != mStamp) {
+                        mStamps[neighbor] = mStamp;
+                        next[nextFrontier++] = neighbor;
+                    }
+                }
+            }
+
+            for (int f = 0; f < nextFrontier; f++)
+                nextScores[f] = mNext[next[f]];
+
+            int[] states = current;
+            current = next;
+            next = states;
+            float[] scores = currentScores;
+            currentScores = nextScores;
+            nextScores = scores;
+            frontier = nextFrontier;
+        }
+
+        return candidates;
+    }
+
+    /**
+     * First and last state of every segment keyed by station at that end.
+     */
+    private static long[] getSegmentEnds(SegmentRanker ranker) {
+        int count = ranker.getStateCount(), size = 0;
+        long[] ends = new long[ranker.getSegmentCount() * 2];
+
+        for (int state = 0; state < count; state++) {
+            int segmentId = ranker.getSegmentId(state);
+            Segment segment = ranker.getSegmentById(segmentId);
+
+            if (state == 0 || ranker.getSegmentId(state - 1) != segmentId)
+                ends[size++] = CellKey.pack(segment.getBeginSeg(), state);
+
+            if (state == count - 1 || ranker.getSegmentId(state + 1) != segmentId)
+                ends[size++] = CellKey.pack(segment.getEndSeg(), state);
+        }
+
+        ends = Arrays.copyOf(ends, size);
+        Arrays.sort(ends);
+        return ends;
+    }
+
+    /**
+     * Counts neighbors of each state into positions when neighbors is null, writes them otherwise.
+     */
+    private static void link(SegmentRanker ranker, long[] ends, int[] positions, int[] neighbors) {
+        int count = ranker.getStateCount();
+
+        for (int state = 0; state + 1 < count; state++)
+            if (ranker.getSegmentId(state) == ranker.getSegmentId(state + 1)) {
+                add(positions, neighbors, state, state + 1);
+                add(positions, neighbors, state + 1, state);
+            }
+
+        for (int begin = 0, end; begin < ends.length; begin = end) {
+            int station = CellKey.getLac(ends[begin]);
+            end = begin;
+            while (end < ends.length && CellKey.getLac(ends[end]) == station)
+                end++;
+
+            for (int i = begin; i < end; i++)
+                for (int j = begin; j < end; j++) {
+                    int from = CellKey.getCid(ends[i]), to = CellKey.getCid(ends[j]);
+
+                    if (from != to)
+                        add(positions, neighbors, from, to);
+                }
+        }
+    }
+
+    private static void add(int[] positions, int[] neighbors, int from, int to) {
+        if (neighbors == null)
+            positions[from]++;
+        else
+            neighbors[positions[from]++] = to;
+    }
+}
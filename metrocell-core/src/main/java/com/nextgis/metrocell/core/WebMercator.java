@@ -0,0 +1,52 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+/**
+ * Spherical Web Mercator (EPSG:3857) projection of WGS84 coordinates.
+ */
+public final class WebMercator {
+    public final static double EARTH_RADIUS = 6378137;
+    public final static double MAX_LATITUDE = 85.0511287798;
+
+    private WebMercator() {
+    }
+
+    public static double toX(double longitude) {
+        return Math.toRadians(longitude) * EARTH_RADIUS;
+    }
+
+    public static double toY(double latitude) {
+        latitude = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude));
+        return Math.log(Math.tan(Math.PI / 4 + Math.toRadians(latitude) / 2)) * EARTH_RADIUS;
+    }
+
+    /**
+     * Projects (longitude, latitude) pairs in place.
+     */
+    public static void project(double[] coordinates, int offset, int count) {
+        for (int i = offset * 2; i < (offset + count) * 2; i += 2) {
+            coordinates[i] = toX(coordinates[i]);
+            coordinates[i + 1] = toY(coordinates[i + 1]);
+        }
+    }
+}
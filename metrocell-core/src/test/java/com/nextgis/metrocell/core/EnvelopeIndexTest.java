@@ -0,0 +1,89 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EnvelopeIndexTest {
+    @Test
+    public void testEmpty() {
+        EnvelopeIndex<Integer> index = new EnvelopeIndex.Builder<Integer>().build();
+        List<Integer> result = new ArrayList<>();
+
+        assertEquals(0, index.size());
+        assertEquals(0, index.query(-1, -1, 1, 1, result));
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void testTouching() {
+        EnvelopeIndex<Integer> index = new EnvelopeIndex.Builder<Integer>().add(1, 0, 0, 1, 1).add(2, 2, 2, 3, 3).build();
+        List<Integer> result = new ArrayList<>();
+
+        assertEquals(1, index.query(1, 1, 1.5, 1.5, result));
+        assertEquals(Collections.singletonList(1), result);
+    }
+
+    @Test
+    public void testSameAsBruteForce() {
+        for (int capacity : new int[]{2, 4, EnvelopeIndex.DEFAULT_NODE_CAPACITY}) {
+            Random random = new Random(capacity);
+            EnvelopeIndex.Builder<Integer> builder = new EnvelopeIndex.Builder<>(capacity);
+            double[] boxes = new double[1000 * 4];
+
+            for (int i = 0; i < boxes.length / 4; i++) {
+                double x = random.nextDouble() * 1000, y = random.nextDouble() * 1000;
+                boxes[i * 4] = x;
+                boxes[i * 4 + 1] = y;
+                boxes[i * 4 + 2] = x + random.nextDouble() * 20;
+                boxes[i * 4 + 3] = y + random.nextDouble() * 20;
+                builder.add(i, boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3]);
+            }
+
+            EnvelopeIndex<Integer> index = builder.build();
+            assertEquals(boxes.length / 4, index.size());
+
+            for (int q = 0; q < 200; q++) {
+                double minX = random.nextDouble() * 1000, minY = random.nextDouble() * 1000;
+                double maxX = minX + random.nextDouble() * 100, maxY = minY + random.nextDouble() * 100;
+
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < boxes.length / 4; i++)
+                    if (boxes[i * 4] <= maxX && boxes[i * 4 + 2] >= minX && boxes[i * 4 + 1] <= maxY && boxes[i * 4 + 3] >= minY)
+                        expected.add(i);
+
+                List<Integer> actual = new ArrayList<>();
+                assertEquals(expected.size(), index.query(minX, minY, maxX, maxY, actual));
+                Collections.sort(actual);
+                assertEquals(expected, actual);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintIndexTest {
+    private final static int LAC = 7700;
+
+    private static CellObservation cell(int cid) {
+        return new CellObservation(0, true, 0, 250, 1, LAC, cid, -1, -70);
+    }
+
+    private static FingerprintIndex index() {
+        return new FingerprintIndex.Builder()
+                .add(LAC, 1, 1, 2).add(LAC, 1, 2, 3).add(LAC, 1, 3, 4).add(LAC, 1, 2, 3)
+                .add(LAC, 2, 2, 3).add(LAC, 2, 3, 4).add(LAC, 2, 5, 6)
+                .add(LAC, 3, 3, 4)
+                .build();
+    }
+
+    @Test
+    public void testDictionary() {
+        FingerprintIndex index = index();
+
+        assertEquals(3, index.getCellCount());
+        assertEquals(4, index.getSegmentCount());
+        assertEquals(new Segment(3, 4), index.getSegment(index.getSegmentId(3, 4)));
+        assertEquals(-1, index.getSegmentId(4, 5));
+        // duplicate rows of a segment give one posting
+        assertEquals(3, index.getPostingsCount(index.find(CellKey.pack(LAC, 1))));
+        assertEquals(-1, index.find(CellKey.pack(LAC, 4)));
+    }
+
+    @Test
+    public void testIntersection() {
+        FingerprintIndex index = index();
+
+        assertEquals(Arrays.asList(new Segment(1, 2), new Segment(2, 3), new Segment(3, 4)),
+                index.getSegments(Arrays.asList(cell(1))));
+        assertEquals(Arrays.asList(new Segment(2, 3), new Segment(3, 4)), index.getSegments(Arrays.asList(cell(1), cell(2))));
+        assertEquals(Arrays.asList(new Segment(3, 4)), index.getSegments(Arrays.asList(cell(2), cell(1), cell(3))));
+    }
+
+    @Test
+    public void testNoIntersection() {
+        FingerprintIndex index = index();
+
+        assertTrue(index.getSegments(new ArrayList<CellObservation>()).isEmpty());
+        assertTrue(index.getSegments(Arrays.asList(cell(1), cell(4))).isEmpty());
+        assertTrue(index.getSegments(Arrays.asList(cell(3), new CellObservation(0, true, 0, 250, 1, LAC + 1, 3, -1, -70))).isEmpty());
+    }
+
+    @Test
+    public void testIntersect() {
+        int[] buffer = {1, 3, 5, 7, 9};
+        int[] postings = {0, 0, 3, 4, 5, 9, 0};
+
+        assertEquals(3, FingerprintIndex.intersect(buffer, buffer.length, postings, 2, 6));
+        assertEquals(3, buffer[0]);
+        assertEquals(5, buffer[1]);
+        assertEquals(9, buffer[2]);
+        assertEquals(0, FingerprintIndex.intersect(buffer, 3, postings, 2, 2));
+    }
+
+    @Test
+    public void testMatchesScan() {
+        List<LogPoint> rows = MappedFingerprintStoreTest.createRows(1, 30, 12, 8);
+        FingerprintIndex index = FingerprintIndex.fromRows(rows);
+        MemoryFingerprintSource source = new MemoryFingerprintSource(rows);
+
+        for (int a = 0; a < 40; a++) {
+            for (int b = a; b < 40; b += 3) {
+                List<CellObservation> cells = Arrays.asList(cell(a), cell(b));
+                List<Segment> expected = source.getSegments(cells);
+                List<Segment> actual = index.getSegments(cells);
+
+                assertEquals(expected.size(), actual.size());
+                assertTrue(actual.containsAll(expected));
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeoJsonReaderTest {
+    @Test
+    public void testFeatures() throws IOException {
+        GeoJsonReader reader = new GeoJsonReader(new StringReader("{\"type\": \"FeatureCollection\", \"features\": ["
+                + "{\"type\": \"Feature\", \"id\": 7, \"geometry\": {\"type\": \"Point\", \"coordinates\": [37.5, 55.7, 140]},"
+                + " \"properties\": {\"name\": \"Park\", \"line\": 3, \"ratio\": 0.5, \"open\": true, \"note\": null}},"
+                + "{\"type\": \"Feature\", \"properties\": {\"nested\": {\"a\": [1, 2]}},"
+                + " \"geometry\": {\"type\": \"MultiLineString\", \"coordinates\": [[[0, 0], [1, 1], [2, 0]], [[5, 5], [6, 6]]]}},"
+                + "{\"type\": \"Feature\", \"geometry\": null, \"properties\": {}}]}"));
+
+        assertTrue(reader.next());
+        assertTrue(reader.hasId());
+        assertEquals(7, reader.getId());
+        assertEquals("Point", reader.getGeometryType());
+        assertEquals(1, reader.getPointCount());
+        assertEquals(37.5, reader.getCoordinates()[0], 0);
+        assertEquals(55.7, reader.getCoordinates()[1], 0);
+        assertEquals(5, reader.getPropertyCount());
+        assertEquals("name", reader.getPropertyName(0));
+        assertEquals("Park", reader.getPropertyValue(0));
+        assertEquals(3L, reader.getPropertyValue(1));
+        assertEquals(0.5, reader.getPropertyValue(2));
+        assertEquals(true, reader.getPropertyValue(3));
+        assertNull(reader.getPropertyValue(4));
+
+        assertTrue(reader.next());
+        assertFalse(reader.hasId());
+        assertEquals("MultiLineString", reader.getGeometryType());
+        assertEquals(5, reader.getPointCount());
+        assertEquals(2, reader.getPartCount());
+        assertEquals(3, reader.getPartEnd(0));
+        assertEquals(5, reader.getPartEnd(1));
+        assertEquals(6, reader.getCoordinates()[9], 0);
+        assertEquals(1, reader.getPropertyCount());
+        assertNull(reader.getPropertyValue(0));
+
+        assertTrue(reader.next());
+        assertNull(reader.getGeometryType());
+        assertEquals(0, reader.getPointCount());
+        assertEquals(0, reader.getPropertyCount());
+
+        assertFalse(reader.next());
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void testPolygons() throws IOException {
+        GeoJsonReader reader = new GeoJsonReader(new StringReader("{\"features\": [{\"geometry\": {\"type\": \"MultiPolygon\","
+                + " \"coordinates\": [[[[0, 0], [4, 0], [4, 4], [0, 0]], [[1, 1], [2, 1], [2, 2], [1, 1]]],"
+                + " [[[5, 5], [6, 5], [6, 6], [5, 5]]]]}}]}"));
+
+        assertTrue(reader.next());
+        assertEquals(12, reader.getPointCount());
+        assertEquals(3, reader.getPartCount());
+        assertEquals(2, reader.getPolygonCount());
+        assertEquals(2, reader.getPolygonEnd(0));
+        assertEquals(3, reader.getPolygonEnd(1));
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void testCrs() throws IOException {
+        GeoJsonReader reader = new GeoJsonReader(new StringReader("{\"type\": \"FeatureCollection\","
+                + " \"crs\": {\"type\": \"name\", \"properties\": {\"name\": \"urn:ogc:def:crs:EPSG::3857\"}}, \"features\": []}"));
+
+        assertFalse(reader.next());
+        assertEquals("urn:ogc:def:crs:EPSG::3857", reader.getCrsName());
+        assertFalse(reader.isWgs84());
+        reader.close();
+    }
+
+    @Test
+    public void testMembersAfterFeatures() throws IOException {
+        GeoJsonReader reader = new GeoJsonReader(new StringReader("{\"features\": [{\"id\": 1}],"
+                + " \"crs\": {\"properties\": {\"name\": \"" + GeoJsonReader.CRS_WGS84 + "\"}}}"));
+
+        assertNull(reader.getCrsName());
+        assertTrue(reader.next());
+        assertEquals(1, reader.getId());
+        assertFalse(reader.next());
+        assertEquals(GeoJsonReader.CRS_WGS84, reader.getCrsName());
+        assertTrue(reader.isWgs84());
+        reader.close();
+    }
+}
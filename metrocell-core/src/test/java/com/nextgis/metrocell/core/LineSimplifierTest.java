@@ -0,0 +1,102 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LineSimplifierTest {
+    @Test
+    public void testShortLine() {
+        double[] coordinates = {0, 0, 1, 1};
+        boolean[] keep = new boolean[2];
+
+        assertEquals(2, LineSimplifier.simplify(coordinates, 0, 2, 10, keep));
+        assertTrue(keep[0] && keep[1]);
+    }
+
+    @Test
+    public void testStraightLine() {
+        double[] coordinates = {0, 0, 1, 0.01, 2, -0.01, 3, 0, 4, 0};
+        boolean[] keep = new boolean[5];
+
+        assertEquals(2, LineSimplifier.simplify(coordinates, 0, 5, 0.1, keep));
+        assertTrue(keep[0]);
+        assertFalse(keep[1] || keep[2] || keep[3]);
+        assertTrue(keep[4]);
+    }
+
+    @Test
+    public void testCorner() {
+        double[] coordinates = {0, 0, 1, 0, 2, 0, 2, 1, 2, 2};
+        boolean[] keep = new boolean[5];
+
+        assertEquals(3, LineSimplifier.simplify(coordinates, 0, 5, 0.1, keep));
+        assertTrue(keep[0] && keep[2] && keep[4]);
+        assertFalse(keep[1] || keep[3]);
+    }
+
+    @Test
+    public void testRange() {
+        // points outside from..to are left as they are
+        double[] coordinates = {5, 5, 0, 0, 1, 1, 2, 0, 7, 7};
+        boolean[] keep = {true, true, true, true, false};
+
+        assertEquals(3, LineSimplifier.simplify(coordinates, 1, 4, 0.5, keep));
+        assertTrue(keep[0] && keep[1] && keep[2] && keep[3]);
+        assertFalse(keep[4]);
+
+        assertEquals(2, LineSimplifier.simplify(coordinates, 1, 4, 2, keep));
+        assertFalse(keep[2]);
+    }
+
+    @Test
+    public void testWithinTolerance() {
+        double[] coordinates = new double[200 * 2];
+        for (int i = 0; i < 200; i++) {
+            coordinates[i * 2] = i;
+            coordinates[i * 2 + 1] = 10 * Math.sin(i / 10.0);
+        }
+
+        double tolerance = 0.5;
+        boolean[] keep = new boolean[200];
+        int kept = LineSimplifier.simplify(coordinates, 0, 200, tolerance, keep);
+
+        int count = 0, previous = -1;
+        for (int i = 0; i < 200; i++) {
+            if (!keep[i])
+                continue;
+
+            for (int j = previous + 1; j < i && previous >= 0; j++)
+                assertTrue(LineSimplifier.getSquaredDistance(coordinates, j, previous, i) <= tolerance * tolerance);
+
+            previous = i;
+            count++;
+        }
+
+        assertEquals(count, kept);
+        assertTrue(kept > 2 && kept < 200);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LocatorCacheTest {
+    private static CellObservation cell(int cid, int rssi, int minPower, int maxPower, boolean active) {
+        CellObservation cell = new CellObservation(0, active, 0, 250, 1, 7700, cid, -1, rssi);
+        cell.setMinPower(minPower);
+        cell.setMaxPower(maxPower);
+        return cell;
+    }
+
+    private static List<CellObservation> cells(CellObservation... cells) {
+        return Arrays.asList(cells);
+    }
+
+    @Test
+    public void testKey() {
+        LocatorCache cache = new LocatorCache(8, 1000);
+        CellObservation a = cell(1, -70, -75, -65, true), b = cell(2, -80, -85, -75, false);
+        LocatorCache.Key key = cache.getKey(cells(a, b), true, 0);
+
+        assertEquals(key, cache.getKey(cells(cell(1, -70, -75, -65, true), cell(2, -80, -85, -75, false)), true, 0));
+        assertEquals(key.hashCode(), cache.getKey(cells(a, b), true, 0).hashCode());
+
+        // every input locator reads makes a different fingerprint
+        assertFalse(key.equals(cache.getKey(cells(b, a), true, 0)));
+        assertFalse(key.equals(cache.getKey(cells(a, b), false, 0)));
+        assertFalse(key.equals(cache.getKey(cells(a, b), true, 1)));
+        assertFalse(key.equals(cache.getKey(cells(cell(1, -71, -75, -65, true), b), true, 0)));
+        assertFalse(key.equals(cache.getKey(cells(cell(1, -70, -76, -65, true), b), true, 0)));
+        assertFalse(key.equals(cache.getKey(cells(cell(1, -70, -75, -64, true), b), true, 0)));
+        assertFalse(key.equals(cache.getKey(cells(cell(1, -70, -75, -65, false), b), true, 0)));
+        assertFalse(key.equals(cache.getKey(cells(a), true, 0)));
+    }
+
+    @Test
+    public void testExpiry() {
+        LocatorCache cache = new LocatorCache(8, 1000);
+        LocatorCache.Key key = cache.getKey(cells(cell(1, -70, -70, -70, true)), true, 0);
+        LocatorResult result = new LocatorResult();
+
+        assertNull(cache.get(key, 0));
+        cache.put(key, result, 100);
+        assertSame(result, cache.get(key, 1100));
+        assertNull(cache.get(key, 1101));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testEviction() {
+        LocatorCache cache = new LocatorCache(2, 1000);
+        LocatorCache.Key first = cache.getKey(cells(cell(1, -70, -70, -70, true)), true, 0);
+        LocatorCache.Key second = cache.getKey(cells(cell(2, -70, -70, -70, true)), true, 0);
+        LocatorCache.Key third = cache.getKey(cells(cell(3, -70, -70, -70, true)), true, 0);
+
+        cache.put(first, new LocatorResult(), 0);
+        cache.put(second, new LocatorResult(), 0);
+        // least recently used one goes first
+        cache.get(first, 0);
+        cache.put(third, new LocatorResult(), 0);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(second, 0));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedFingerprintStoreTest {
+    private final static int LAC = 7700, POWER_DELTA = 5;
+
+    private File mFile;
+    private List<LogPoint> mRows;
+    private MemoryFingerprintSource mMemory;
+    private MappedFingerprintStore mMapped;
+
+    /**
+     * Rows of consecutive segments, each heard by cells of a sliding window. Some rows have no ratio.
+     */
+    static List<LogPoint> createRows(long seed, int segments, int cellsPerSegment, int rowsPerCell) {
+        Random random = new Random(seed);
+        List<LogPoint> rows = new ArrayList<>();
+
+        for (int s = 0; s < segments; s++)
+            for (int c = 0; c < cellsPerSegment; c++)
+                for (int r = 0; r < rowsPerCell; r++) {
+                    double ratio = random.nextInt(10) == 0 ? Double.NaN : random.nextDouble();
+                    rows.add(new LogPoint(s, s + 1, ratio, LAC, s + c, -1, -110 + random.nextInt(60), random.nextDouble(),
+                            random.nextDouble()));
+                }
+
+        return rows;
+    }
+
+    static CellObservation cell(int cid, int minPower, int maxPower) {
+        CellObservation cell = new CellObservation(0, true, 0, 250, 1, LAC, cid, -1, (minPower + maxPower) / 2);
+        cell.setMinPower(minPower);
+        cell.setMaxPower(maxPower);
+        return cell;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mRows = createRows(1, 20, 6, 10);
+        FingerprintStoreWriter writer = new FingerprintStoreWriter();
+        for (LogPoint row : mRows)
+            writer.add(row);
+
+        mFile = File.createTempFile("fingerprints", ".bin");
+        writer.write(mFile);
+        mMemory = new MemoryFingerprintSource(mRows);
+        mMapped = new MappedFingerprintStore(mFile);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void testRows() {
+        assertEquals(mRows.size(), mMapped.getCount());
+
+        List<String> expected = new ArrayList<>(), actual = new ArrayList<>();
+        for (int i = 0; i < mRows.size(); i++) {
+            expected.add(toString(mRows.get(i)));
+            actual.add(toString(mMapped.getRow(i)));
+        }
+
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testSameAsMemory() {
+        Random random = new Random(2);
+
+        for (int i = 0; i < 300; i++) {
+            List<CellObservation> cells = new ArrayList<>();
+            int first = random.nextInt(26), count = 1 + random.nextInt(3);
+
+            for (int c = 0; c < count; c++) {
+                int min = -110 + random.nextInt(50);
+                cells.add(cell(first + random.nextInt(6), min, min + random.nextInt(20)));
+            }
+
+            List<Segment> segments = mMemory.getSegments(cells);
+            assertEquals(segments.size(), mMapped.getSegments(cells).size());
+            assertTrue(mMapped.getSegments(cells).containsAll(segments));
+
+            for (Segment segment : segments) {
+                RatioInterval expected = mMemory.getRatioInterval(segment, cells, POWER_DELTA);
+                RatioInterval actual = mMapped.getRatioInterval(segment, cells, POWER_DELTA);
+
+                if (expected == null) {
+                    assertNull(actual);
+                    continue;
+                }
+
+                assertEquals(expected.getMin(), actual.getMin(), 0);
+                assertEquals(expected.getMax(), actual.getMax(), 0);
+                assertEquals(getPoints(mMemory, segment, cells, expected), getPoints(mMapped, segment, cells, expected));
+            }
+
+            for (CellObservation cell : cells)
+                assertEquals(getCellPoints(mMemory, cell), getCellPoints(mMapped, cell));
+        }
+    }
+
+    @Test
+    public void testRowsWithoutRatio() throws IOException {
+        List<LogPoint> rows = new ArrayList<>();
+        rows.add(new LogPoint(1, 2, Double.NaN, LAC, 1, -1, -80, 0, 0));
+        rows.add(new LogPoint(1, 2, 0.25, LAC, 1, -1, -75, 0, 0));
+        rows.add(new LogPoint(1, 2, 0.75, LAC, 1, -1, -70, 0, 0));
+        rows.add(new LogPoint(1, 2, Double.NaN, LAC, 2, -1, -70, 0, 0));
+
+        FingerprintStoreWriter writer = new FingerprintStoreWriter();
+        for (LogPoint row : rows)
+            writer.add(row);
+        writer.write(mFile);
+        MappedFingerprintStore store = new MappedFingerprintStore(mFile);
+
+        Segment segment = new Segment(1, 2);
+        List<CellObservation> cells = new ArrayList<>();
+        cells.add(cell(1, -80, -70));
+        cells.add(cell(2, -80, -70));
+
+        // the cell heard without ratio only doesn't narrow the interval
+        RatioInterval interval = store.getRatioInterval(segment, cells, 0);
+        assertEquals(0.25, interval.getMin(), 0);
+        assertEquals(0.75, interval.getMax(), 0);
+        assertEquals(2, getPoints(store, segment, cells, interval).size());
+        assertNull(store.getRatioInterval(segment, cells.subList(1, 2), 0));
+    }
+
+    private static List<String> getPoints(FingerprintSource source, Segment segment, List<CellObservation> cells, RatioInterval interval) {
+        List<LogPoint> points = new ArrayList<>();
+        source.getPoints(segment, cells, POWER_DELTA, interval, points);
+        return toStrings(points);
+    }
+
+    private static List<String> getCellPoints(FingerprintSource source, CellObservation cell) {
+        List<LogPoint> points = new ArrayList<>();
+        source.getCellPoints(cell, points);
+        return toStrings(points);
+    }
+
+    private static List<String> toStrings(List<LogPoint> points) {
+        List<String> result = new ArrayList<>();
+        for (LogPoint point : points)
+            result.add(toString(point));
+
+        Collections.sort(result);
+        return result;
+    }
+
+    private static String toString(LogPoint row) {
+        return row.getSegBegin() + " " + row.getSegEnd() + " " + row.getRatio() + " " + row.getLac() + " " + row.getCid() + " "
+                + row.getPsc() + " " + row.getPower() + " " + row.getX() + " " + row.getY();
+    }
+}
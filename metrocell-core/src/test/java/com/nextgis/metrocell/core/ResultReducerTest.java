@@ -0,0 +1,113 @@
+/*
+ * Project:  Metrocell
+ * Purpose:  Locating in metro by cell towers
+ * Author:   Stanislav Petriakov, becomeglory@gmail.com
+ * *****************************************************************************
+ * Copyright (c) 2015 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.metrocell.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResultReducerTest {
+    private final static int LAC = 7700;
+
+    private static LogPoint row(int segBegin, double ratio, int cid, int power, double x, double y) {
+        return new LogPoint(segBegin, segBegin + 1, ratio, LAC, cid, -1, power, x, y);
+    }
+
+    @Test
+    public void testEstimate() {
+        List<SegmentEstimate> estimates = new ResultReducer()
+                .add(row(1, 0.2, 1, -70, 0, 0))
+                .add(row(1, 0.6, 1, -70, 2, 0))
+                .add(row(1, 0.4, 2, -70, 1, 3), 2)
+                .getEstimates();
+
+        assertEquals(1, estimates.size());
+        SegmentEstimate estimate = estimates.get(0);
+        assertEquals(new Segment(1, 2), estimate.getSegment());
+        assertEquals(3, estimate.getRowCount());
+        assertEquals(2, estimate.getCellCount());
+        assertEquals(4, estimate.getWeight(), 1e-12);
+        assertEquals(0.2, estimate.getMinRatio(), 0);
+        assertEquals(0.6, estimate.getMaxRatio(), 0);
+        assertEquals((0.2 + 0.6 + 0.4 * 2) / 4, estimate.getRatio(), 1e-12);
+        assertEquals(1, estimate.getX(), 1e-12);
+        assertEquals(1.5, estimate.getY(), 1e-12);
+
+        // weighted squared distances from (1, 1.5): 3.25 + 3.25 + 2 * 2.25
+        assertEquals(Math.sqrt(11.0 / 4), estimate.getRadius(), 1e-12);
+    }
+
+    @Test
+    public void testRowsWithoutRatio() {
+        SegmentEstimate estimate = new ResultReducer()
+                .add(row(1, Double.NaN, 1, -70, 0, 0), 3)
+                .add(row(1, 0.5, 2, -70, 4, 0))
+                .getEstimates().get(0);
+
+        assertEquals(0.5, estimate.getRatio(), 0);
+        assertEquals(0.5, estimate.getMinRatio(), 0);
+        assertEquals(1, estimate.getX(), 1e-12);
+
+        estimate = new ResultReducer().add(row(1, Double.NaN, 1, -70, 0, 0)).getEstimates().get(0);
+        assertTrue(Double.isNaN(estimate.getRatio()));
+        assertTrue(Double.isNaN(estimate.getMinRatio()));
+    }
+
+    @Test
+    public void testOrder() {
+        List<SegmentEstimate> estimates = new ResultReducer()
+                .add(row(1, 0.5, 1, -70, 0, 0), 5)
+                .add(row(2, 0.5, 1, -70, 0, 0))
+                .add(row(2, 0.5, 2, -70, 0, 0))
+                .add(row(3, 0.5, 1, -70, 0, 0), 6)
+                .add(row(4, 0.5, 1, -70, 0, 0), 0)
+                .getEstimates();
+
+        // more cells first, then heavier, rows without weight are dropped
+        assertEquals(4, estimates.size());
+        assertEquals(new Segment(2, 3), estimates.get(0).getSegment());
+        assertEquals(new Segment(3, 4), estimates.get(1).getSegment());
+        assertEquals(new Segment(1, 2), estimates.get(2).getSegment());
+        assertEquals(0, estimates.get(3).getRowCount());
+    }
+
+    @Test
+    public void testReduce() {
+        List<LogPoint> rows = new ArrayList<>();
+        rows.add(row(1, 0.5, 1, -70, 0, 0));
+        rows.add(row(2, 0.5, 1, -80, 0, 0));
+        rows.add(row(2, 0.5, 3, -90, 0, 0));
+        List<CellObservation> cells = Arrays.asList(new CellObservation(0, true, 0, 250, 1, LAC, 1, -1, -70));
+
+        List<SegmentEstimate> estimates = ResultReducer.reduce(rows, cells);
+
+        // rows of the observed cell weigh by power difference, others count as one
+        assertEquals(new Segment(2, 3), estimates.get(0).getSegment());
+        assertEquals(1.0 / 11 + 1, estimates.get(0).getWeight(), 1e-12);
+        assertEquals(1, estimates.get(1).getWeight(), 1e-12);
+    }
+}